@@ -0,0 +1,63 @@
+package bench;
+
+import controllers.EventRing;
+
+/**
+ * Stress test of {@link EventRing} with a real producer and consumer thread, the way the native hook and the
+ * recording timer use it. Runs a producer paced at one event per microsecond against a consumer draining every 8 ms,
+ * which must lose nothing, then both flat out, which may drop but must never deliver an event twice, out of order or
+ * torn. Every event carries its sequence number in all four fields so the consumer can tell. Exits with status 1 if
+ * anything was lost, duplicated, reordered or torn, or the counters do not add up.
+ */
+public class EventRingStressCheck {
+    private static final int CAPACITY = 1 << 16;
+    private static final int PACED = 5_000_000;
+    private static final int UNPACED = 20_000_000;
+
+    public static void main(String... args) throws InterruptedException {
+        boolean ok = run("paced 1 event/us, drain every 8 ms", PACED, 1_000, 8, false);
+        ok &= run("unpaced, busy drain", UNPACED, 0, 0, true);
+        System.exit(ok ? 0 : 1);
+    }
+
+    /**
+     * @param interval     nanoseconds between offers, 0 for as fast as possible
+     * @param drainPeriod  milliseconds the consumer sleeps between drains
+     * @param dropsAllowed whether a full ring is expected
+     */
+    private static boolean run(String name, int events, long interval, long drainPeriod, boolean dropsAllowed) throws InterruptedException {
+        EventRing ring = new EventRing(CAPACITY);
+        Checker checker = new Checker();
+        Thread producer = new Thread(() -> {
+            long start = System.nanoTime();
+            for (int i = 0; i < events; i++) {
+                if (interval > 0) while (System.nanoTime() - start < i * interval) Thread.onSpinWait();
+                ring.offer(i % 6, i, i, ~i);
+            }
+        }, "Producer");
+        long start = System.nanoTime();
+        producer.start();
+        while (producer.isAlive()) {
+            if (drainPeriod > 0) Thread.sleep(drainPeriod);
+            ring.drain(checker);
+        }
+        ring.drain(checker);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        boolean ok = checker.errors == 0 && checker.delivered == ring.published() && ring.published() + ring.dropped() == events
+                && (dropsAllowed || ring.dropped() == 0);
+        System.out.printf("%s: %d events in %.2f s, %.2fM events/s delivered, %d dropped in %d overflows, %d errors: %s%n",
+                name, events, seconds, checker.delivered / seconds / 1e6, ring.dropped(), ring.overflows(), checker.errors, ok ? "ok" : "FAILED");
+        return ok;
+    }
+
+    private static class Checker implements EventRing.Handler {
+        long delivered, errors, last = -1;
+
+        public void accept(int type, long time, int a, int b) {
+            if (time <= last || type != time % 6 || a != (int) time || b != ~a) errors++;
+            last = time;
+            delivered++;
+        }
+    }
+}
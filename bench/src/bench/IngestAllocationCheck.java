@@ -0,0 +1,143 @@
+package bench;
+
+import controllers.EventRing;
+import controllers.EventStore;
+import controllers.Ingest;
+import controllers.Recorder;
+import display.Settings;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingFile;
+import org.jnativehook.keyboard.NativeKeyEvent;
+import org.jnativehook.mouse.NativeMouseEvent;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Checks that the path from the native hook to the stores allocates nothing once the stores have grown: runs a
+ * synthetic stream of moves, drags, keys and clicks through the hook-side work ({@link EventRing#offer}, hotkey
+ * matching) and {@link Ingest}, counting the bytes that thread allocates, with JFR sampling its allocations through
+ * {@code jdk.ObjectAllocationSample} to name the allocating frames. Repeats the measurement {@code args[0]} times, 10
+ * by default, and exits with status 1 if any run allocated anything. Needs JDK 16 or later for the event.
+ */
+public class IngestAllocationCheck {
+    private static final int EVENTS = 2_000_000;
+    private static final int[] KEYS = {NativeKeyEvent.VC_A, NativeKeyEvent.VC_W, NativeKeyEvent.VC_SHIFT, NativeKeyEvent.VC_SPACE, NativeKeyEvent.VC_UP};
+
+    private static final EventRing events = new EventRing(1 << 16);
+    private static final EventStore mousePositions = new EventStore(EventStore.Kind.MOVE);
+    private static final EventStore mousePresses = new EventStore(EventStore.Kind.PRESS);
+    private static final EventStore keyPresses = new EventStore(EventStore.Kind.PRESS);
+    private static final Ingest ingest = new Ingest(mousePositions, mousePresses, keyPresses, Settings.PATH_TOLERANCE, Settings.PATH_TIME_TOLERANCE);
+    private static int hotkeys;
+
+    public static void main(String... args) throws Exception {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        boolean[] ok = {true};
+        Thread thread = new Thread(() -> {
+            record(); // grow the stores and let the JIT settle
+            record();
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            long id = Thread.currentThread().getId();
+            threads.getThreadAllocatedBytes(id); // links everything measuring calls, so it happens before the window
+            try {
+                for (int run = 0; run <= runs; run++) // run 0 only warms up starting and stopping JFR
+                    try (Recording recording = new Recording()) {
+                        recording.enable("jdk.ObjectAllocationSample").with("throttle", "off").withStackTrace();
+                        recording.start();
+                        long before = threads.getThreadAllocatedBytes(id);
+                        record();
+                        long allocated = threads.getThreadAllocatedBytes(id) - before;
+                        recording.stop();
+                        if (run == 0) continue;
+                        File file = File.createTempFile("ingest", ".jfr");
+                        file.deleteOnExit();
+                        recording.dump(file.toPath());
+                        ok[0] &= report(file, run, allocated);
+                    }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }, "Ingest");
+        thread.start();
+        thread.join();
+        System.out.printf("%d events, %d moves kept, %d clicks, %d keys, hotkeys %d%n", EVENTS, mousePositions.size(), mousePresses.size(), keyPresses.size(), hotkeys);
+        System.exit(ok[0] ? 0 : 1);
+    }
+
+    /**
+     * One recording's worth of events, as the hook thread and then the EDT would handle them.
+     */
+    private static void record() {
+        mousePositions.clear();
+        mousePresses.clear();
+        keyPresses.clear();
+        ingest.reset(Settings.PATH_TOLERANCE, Settings.PATH_TIME_TOLERANCE);
+        double x = 960, y = 540, angle = 0;
+        for (int i = 0; i < EVENTS; i++) {
+            long time = i / 4;
+            switch (i % 400) {
+                case 100:
+                    hook(EventRing.KEY_PRESS, time, KEYS[i / 400 % KEYS.length], 0);
+                    break;
+                case 160:
+                    hook(EventRing.KEY_RELEASE, time, KEYS[i / 400 % KEYS.length], 0);
+                    break;
+                case 200:
+                    hook(EventRing.BUTTON_PRESS, time, NativeMouseEvent.BUTTON1, 0);
+                    break;
+                case 300:
+                    hook(EventRing.BUTTON_RELEASE, time, NativeMouseEvent.BUTTON1, 0);
+                    break;
+                default:
+                    angle += Math.sin(i * 0.001) * 0.05;
+                    x += Math.cos(angle);
+                    y += Math.sin(angle);
+                    hook(i % 400 > 200 && i % 400 < 300 ? EventRing.MOUSE_DRAG : EventRing.MOUSE_MOVE, time, (int) x, (int) y);
+            }
+            if (i % 256 == 255) events.drain(ingest);
+        }
+        events.drain(ingest);
+        ingest.pathSimplifier.flush();
+    }
+
+    private static void hook(int type, long time, int a, int b) {
+        events.offer(type, time, a, b);
+        if (type == EventRing.KEY_PRESS) hotkeys |= Settings.hotkeys(Recorder.translateKey(a), Recorder.translateModifier(0));
+    }
+
+    /**
+     * Only counts samples allocated under {@link #record()}, not the recording being started, stopped or dumped.
+     */
+    private static boolean report(File file, int run, long allocated) throws IOException {
+        long sampled = 0;
+        Map<String, Long> sites = new TreeMap<>();
+        for (RecordedEvent event : RecordingFile.readAllEvents(file.toPath())) {
+            if (event.getThread() == null || !"Ingest".equals(event.getThread().getJavaName()) || !underRecord(event)) continue;
+            long weight = event.getLong("weight");
+            sampled += weight;
+            StringBuilder site = new StringBuilder(event.getClass("objectClass").getName());
+            List<RecordedFrame> frames = event.getStackTrace().getFrames();
+            for (RecordedFrame frame : frames.subList(0, Math.min(4, frames.size())))
+                site.append("\n    at ").append(frame.getMethod().getType().getName()).append('.').append(frame.getMethod().getName()).append(':').append(frame.getLineNumber());
+            sites.merge(site.toString(), weight, Long::sum);
+        }
+        System.out.printf("Run %d: thread allocated %d bytes (%.4f per event), JFR sampled %d bytes in record()%n", run, allocated, allocated / (double) EVENTS, sampled);
+        sites.forEach((site, bytes) -> System.out.println(bytes + " bytes " + site));
+        return allocated == 0 && sampled == 0; // samples only come from TLAB refills, small leaks only show in the total
+    }
+
+    private static boolean underRecord(RecordedEvent event) {
+        if (event.getStackTrace() == null) return false;
+        for (RecordedFrame frame : event.getStackTrace().getFrames())
+            if (frame.getMethod().getType().getName().equals(IngestAllocationCheck.class.getName()) && frame.getMethod().getName().equals("record"))
+                return true;
+        return false;
+    }
+}
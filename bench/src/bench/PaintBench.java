@@ -0,0 +1,77 @@
+package bench;
+
+import controllers.Recorder;
+import display.Editor;
+import display.KeyTimeline;
+import display.MouseDisplay;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Repainting the key timeline and the mouse path into an offscreen image, zoomed in and all the way out, in the
+ * middle of recordings of growing length. The editor registers the native hook and its recorder creates a robot, so
+ * this needs a desktop session just like the application.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PaintBench {
+    @Param({"10000", "100000", "1000000"})
+    public int moves;
+
+    @Param({"1000", "32000"})
+    public int timeRange;
+
+    private Editor editor;
+    private KeyTimeline keyTimeline;
+    private MouseDisplay mouseDisplay;
+    private BufferedImage keyImage, mouseImage;
+    private Graphics2D keyGraphics, mouseGraphics;
+
+    @Setup
+    public void setup() throws AWTException {
+        editor = new Editor();
+        Recorder recorder = editor.recorder();
+        Recordings recording = new Recordings(moves);
+        recorder.mousePositions.addAll(recording.mousePositions);
+        recorder.mousePresses.addAll(recording.mousePresses);
+        recorder.keyPresses.addAll(recording.keyPresses);
+        keyTimeline = new KeyTimeline(editor, recorder);
+        keyTimeline.setSize(1280, 50);
+        mouseDisplay = new MouseDisplay(editor, recorder);
+        mouseDisplay.setSize(1280, 720);
+        editor.update();
+        keyTimeline.update();
+        editor.currentTime = moves / 2;
+        editor.timeRange = timeRange;
+        keyImage = new BufferedImage(1280, 50, BufferedImage.TYPE_INT_ARGB);
+        keyGraphics = keyImage.createGraphics();
+        mouseImage = new BufferedImage(1280, 720, BufferedImage.TYPE_INT_ARGB);
+        mouseGraphics = mouseImage.createGraphics();
+    }
+
+    @TearDown
+    public void tearDown() {
+        keyGraphics.dispose();
+        mouseGraphics.dispose();
+        editor.recorder().exit();
+    }
+
+    @Benchmark
+    public BufferedImage keyTimeline() {
+        keyTimeline.paint(keyGraphics);
+        return keyImage;
+    }
+
+    @Benchmark
+    public BufferedImage mouseDisplay() {
+        mouseDisplay.paint(mouseGraphics);
+        return mouseImage;
+    }
+}
@@ -0,0 +1,73 @@
+package bench;
+
+import controllers.EventRing;
+import controllers.EventStore;
+import controllers.Ingest;
+import org.jnativehook.keyboard.NativeKeyEvent;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pairing key releases with their presses while recording, through {@link Ingest}: rolling over {@code held} keys
+ * at once, so each release looks up one of them, on top of {@code recorded} key presses already recorded. The cost
+ * per pair should not grow with {@code recorded}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PairingBench {
+    private static final int EVENTS = 10_000;
+    private static final int[] KEYS = {NativeKeyEvent.VC_A, NativeKeyEvent.VC_S, NativeKeyEvent.VC_D, NativeKeyEvent.VC_F,
+            NativeKeyEvent.VC_J, NativeKeyEvent.VC_K, NativeKeyEvent.VC_L, NativeKeyEvent.VC_SHIFT, NativeKeyEvent.VC_CONTROL,
+            NativeKeyEvent.VC_ALT, NativeKeyEvent.VC_SPACE, NativeKeyEvent.VC_ENTER, NativeKeyEvent.VC_UP, NativeKeyEvent.VC_DOWN,
+            NativeKeyEvent.VC_LEFT, NativeKeyEvent.VC_RIGHT, NativeKeyEvent.VC_TAB};
+
+    @Param({"1000", "100000", "1000000"})
+    public int recorded;
+
+    @Param({"1", "4", "16"})
+    public int held;
+
+    private final EventStore mousePositions = new EventStore(EventStore.Kind.MOVE);
+    private final EventStore mousePresses = new EventStore(EventStore.Kind.PRESS);
+    private final EventStore keyPresses = new EventStore(EventStore.Kind.PRESS);
+    private final Ingest ingest = new Ingest(mousePositions, mousePresses, keyPresses, 1.5, 0);
+    private EventStore prefilled;
+
+    /**
+     * Records {@code recorded} typed keys, each released before the next is pressed.
+     */
+    @Setup(Level.Trial)
+    public void prefill() {
+        for (int i = 0; i < recorded; i++) {
+            ingest.accept(EventRing.KEY_PRESS, i, KEYS[i % KEYS.length], 0);
+            ingest.accept(EventRing.KEY_RELEASE, i, KEYS[i % KEYS.length], 0);
+        }
+        prefilled = keyPresses.copy();
+    }
+
+    /**
+     * Puts the store back to the prefilled size, so the pairs timed never pile up on top of each other.
+     */
+    @Setup(Level.Invocation)
+    public void restore() {
+        keyPresses.clear();
+        keyPresses.addAll(prefilled);
+        ingest.reset(1.5, 0);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public EventStore pressAndRelease() {
+        for (int i = 0; i < EVENTS; i++) {
+            long time = recorded + i;
+            ingest.accept(EventRing.KEY_PRESS, time, KEYS[i % (held + 1)], 0);
+            ingest.accept(EventRing.KEY_RELEASE, time, KEYS[(i + 1) % (held + 1)], 0); // the key pressed longest ago
+        }
+        return keyPresses;
+    }
+}
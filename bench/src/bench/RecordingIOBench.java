@@ -0,0 +1,57 @@
+package bench;
+
+import controllers.EventStore;
+import controllers.RecordingIO;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saving and opening recordings of growing length, as JSON and in the binary format.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RecordingIOBench {
+    @Param({"10000", "100000", "1000000"})
+    public int moves;
+
+    @Param({".json", RecordingIO.BINARY_EXTENSION})
+    public String extension;
+
+    private Recordings recording;
+    private File file;
+    private final EventStore mousePositions = new EventStore(EventStore.Kind.MOVE);
+    private final EventStore mousePresses = new EventStore(EventStore.Kind.PRESS);
+    private final EventStore keyPresses = new EventStore(EventStore.Kind.PRESS);
+
+    @Setup
+    public void setup() throws IOException {
+        recording = new Recordings(moves);
+        file = File.createTempFile("recording", extension);
+        file.deleteOnExit();
+        RecordingIO.save(file, recording.mousePositions, recording.mousePresses, recording.keyPresses);
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public File save() throws IOException {
+        RecordingIO.save(file, recording.mousePositions, recording.mousePresses, recording.keyPresses);
+        return file;
+    }
+
+    @Benchmark
+    public EventStore open() throws IOException {
+        RecordingIO.load(file, mousePositions, mousePresses, keyPresses);
+        return mousePositions;
+    }
+}
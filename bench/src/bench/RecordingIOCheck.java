@@ -0,0 +1,126 @@
+package bench;
+
+import controllers.EventStore;
+import controllers.RecordingIO;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Round-trips recordings through {@link RecordingIO} as JSON and in the binary format and compares every field:
+ * empty recordings, stores just under, at and over {@link RecordingIO#CHUNK_SIZE} so loading splits them across
+ * chunks, and recordings edited out of time order with jumps, negative values and extremes that the binary deltas
+ * have to survive. Also checks that {@link RecordingIO#stream} never hands over a chunk larger than
+ * {@link RecordingIO#CHUNK_SIZE}. Exits with status 1 if any recording comes back different.
+ */
+public class RecordingIOCheck {
+    private static final String[] EXTENSIONS = {".json", RecordingIO.BINARY_EXTENSION};
+
+    public static void main(String... args) throws IOException {
+        int chunk = RecordingIO.CHUNK_SIZE;
+        boolean ok = true;
+        for (int size : new int[]{0, 1, chunk - 1, chunk, chunk + 1, 2 * chunk + 3}) {
+            Recordings recording = new Recordings(size);
+            ok &= check("sorted, " + size + " moves", recording.mousePositions, recording.mousePresses, recording.keyPresses);
+            EventStore presses = presses(size);
+            ok &= check(size + " presses", new EventStore(EventStore.Kind.MOVE), presses, presses);
+        }
+        for (int size : new int[]{1000, chunk + 1}) {
+            Recordings recording = new Recordings(size);
+            edit(recording.mousePositions, new Random(size));
+            edit(recording.mousePresses, new Random(size + 1));
+            edit(recording.keyPresses, new Random(size + 2));
+            ok &= check("edited out of order, " + size + " moves", recording.mousePositions, recording.mousePresses, recording.keyPresses);
+        }
+        System.exit(ok ? 0 : 1);
+    }
+
+    /**
+     * Recordings only have a press every 100 ms, so the press sections get a store of their own to reach the chunk
+     * boundaries.
+     */
+    private static EventStore presses(int size) {
+        EventStore presses = new EventStore(EventStore.Kind.PRESS, size);
+        Random random = new Random(size);
+        for (int i = 0; i < size; i++) presses.addPress(i * 7L, random.nextInt(256), random.nextInt(300));
+        return presses;
+    }
+
+    /**
+     * Retimes, moves and stretches random events the way dragging in the editor does, plus a few extremes.
+     */
+    private static void edit(EventStore store, Random random) {
+        int n = store.size();
+        for (int e = 0; e < n / 10; e++) {
+            int i = random.nextInt(n);
+            store.setTime(i, store.time(i) + random.nextInt(20001) - 10000);
+            if (store.kind == EventStore.Kind.MOVE) store.setPosition(i, random.nextInt(8000) - 4000, random.nextInt(8000) - 4000);
+            else store.setDuration(i, random.nextInt(5000));
+        }
+        store.setTime(0, -1234);
+        store.setTime(n / 2, Long.MAX_VALUE / 4);
+        store.setTime(n - 1, 0);
+        if (store.kind == EventStore.Kind.MOVE) {
+            store.setPosition(1, Integer.MIN_VALUE, Integer.MAX_VALUE);
+            store.setPosition(2, Integer.MAX_VALUE, Integer.MIN_VALUE);
+        } else {
+            store.setDuration(1, Integer.MAX_VALUE);
+            store.setDuration(2, 0);
+        }
+    }
+
+    private static boolean check(String name, EventStore mousePositions, EventStore mousePresses, EventStore keyPresses) throws IOException {
+        boolean ok = true;
+        for (String extension : EXTENSIONS) {
+            File file = File.createTempFile("roundtrip", extension);
+            try {
+                RecordingIO.save(file, mousePositions, mousePresses, keyPresses);
+                EventStore positions = new EventStore(EventStore.Kind.MOVE), buttons = new EventStore(EventStore.Kind.PRESS), keys = new EventStore(EventStore.Kind.PRESS);
+                RecordingIO.load(file, positions, buttons, keys);
+                String difference = compare("mouse positions", mousePositions, positions);
+                if (difference == null) difference = compare("mouse presses", mousePresses, buttons);
+                if (difference == null) difference = compare("key presses", keyPresses, keys);
+                if (difference == null) difference = checkChunks(file);
+                System.out.printf("%s%s: %d bytes, %s%n", name, extension, file.length(), difference == null ? "ok" : "FAILED, " + difference);
+                ok &= difference == null;
+            } finally {
+                file.delete();
+            }
+        }
+        return ok;
+    }
+
+    private static String compare(String name, EventStore expected, EventStore actual) {
+        if (expected.size() != actual.size()) return name + ": " + actual.size() + " events instead of " + expected.size();
+        boolean move = expected.kind == EventStore.Kind.MOVE;
+        for (int i = 0; i < expected.size(); i++) {
+            if (expected.time(i) != actual.time(i))
+                return name + " " + i + ": time " + actual.time(i) + " instead of " + expected.time(i);
+            if (move ? expected.x(i) != actual.x(i) || expected.y(i) != actual.y(i) : expected.code(i) != actual.code(i) || expected.duration(i) != actual.duration(i))
+                return name + " " + i + ": fields differ";
+        }
+        return null;
+    }
+
+    /**
+     * @return a description of the first oversized chunk, or null
+     */
+    private static String checkChunks(File file) throws IOException {
+        String[] oversized = {null};
+        RecordingIO.stream(file, new RecordingIO.Sink() {
+            public void append(int section, EventStore chunk) {
+                if (chunk.size() > RecordingIO.CHUNK_SIZE && oversized[0] == null)
+                    oversized[0] = "section " + section + " streamed a chunk of " + chunk.size() + " events";
+            }
+
+            public void progress(long bytesRead, long totalBytes) {
+            }
+
+            public boolean isCancelled() {
+                return false;
+            }
+        });
+        return oversized[0];
+    }
+}
@@ -0,0 +1,35 @@
+package bench;
+
+import controllers.EventStore;
+
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.util.Random;
+
+/**
+ * Synthetic recordings for the benchmarks: a mouse sample every millisecond wandering over a 1920x1080 screen, a
+ * click every 500 ms and a key press every 100 ms, always the same for the same size.
+ */
+public class Recordings {
+    public final EventStore mousePositions = new EventStore(EventStore.Kind.MOVE);
+    public final EventStore mousePresses = new EventStore(EventStore.Kind.PRESS);
+    public final EventStore keyPresses = new EventStore(EventStore.Kind.PRESS);
+
+    /**
+     * @param moves number of mouse samples, the recording lasts that many milliseconds
+     */
+    public Recordings(int moves) {
+        Random random = new Random(moves);
+        double x = 960, y = 540, angle = 0;
+        for (int time = 0; time < moves; time++) {
+            angle += random.nextGaussian() * 0.1;
+            x = Math.max(0, Math.min(1919, x + Math.cos(angle) * 2));
+            y = Math.max(0, Math.min(1079, y + Math.sin(angle) * 2));
+            mousePositions.addMove(time, (int) x, (int) y);
+            if (time % 500 == 250)
+                mousePresses.addPress(time, InputEvent.BUTTON1_MASK, 40 + random.nextInt(80));
+            if (time % 100 == 0)
+                keyPresses.addPress(time, KeyEvent.VK_A + random.nextInt(26), 30 + random.nextInt(120));
+        }
+    }
+}
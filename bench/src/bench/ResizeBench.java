@@ -0,0 +1,43 @@
+package bench;
+
+import controllers.Recorder;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Halving a screen capture to grayscale, done for every captured frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResizeBench {
+    @Param({"1280x720", "1920x1080", "3840x2160"})
+    public String screen;
+
+    private BufferedImage image;
+
+    @Setup
+    public void setup() {
+        String[] size = screen.split("x");
+        image = new BufferedImage(Integer.parseInt(size[0]), Integer.parseInt(size[1]), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        Random random = new Random(0);
+        for (int i = 0; i < 200; i++) { // windows and text-ish noise rather than a flat image
+            g.setColor(new Color(random.nextInt()));
+            g.fillRect(random.nextInt(image.getWidth()), random.nextInt(image.getHeight()), random.nextInt(400), random.nextInt(300));
+        }
+        g.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage resize() {
+        return Recorder.resize(image);
+    }
+}
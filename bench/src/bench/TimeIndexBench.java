@@ -0,0 +1,75 @@
+package bench;
+
+import controllers.EventStore;
+import controllers.TimeIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finding the mouse samples within {@link #WINDOW} ms of the playhead, as every repaint of the path and the timeline
+ * does: a scan over every sample against the {@link TimeIndex} binary search, on a recording straight from the hook
+ * and on one with samples retimed out of order. {@code retime} is the cost of the rebuild the next query pays after
+ * a sample is dragged.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimeIndexBench {
+    private static final long WINDOW = 2000;
+    private static final int QUERIES = 1024;
+
+    @Param({"100000", "1000000"})
+    public int moves;
+
+    @Param({"false", "true"})
+    public boolean retimed;
+
+    private EventStore store;
+    private TimeIndex index;
+    private final long[] queries = new long[QUERIES];
+    private int query;
+    private Random random;
+
+    @Setup
+    public void setup() {
+        store = new Recordings(moves).mousePositions;
+        random = new Random(moves);
+        if (retimed)
+            for (int i = 0; i < 1000; i++) {
+                int sample = random.nextInt(moves);
+                store.setTime(sample, store.time(sample) + random.nextInt(10001) - 5000);
+            }
+        index = new TimeIndex(store);
+        index.refresh();
+        for (int i = 0; i < QUERIES; i++) queries[i] = random.nextInt(moves);
+    }
+
+    @Benchmark
+    public long scan() {
+        long time = queries[query++ & QUERIES - 1], sum = 0;
+        for (int i = 0; i < store.size(); i++)
+            if (store.time(i) >= time - WINDOW && store.time(i) <= time + WINDOW) sum += store.x(i);
+        return sum;
+    }
+
+    @Benchmark
+    public long indexed() {
+        long time = queries[query++ & QUERIES - 1], sum = 0;
+        for (int p = index.lowerBound(time - WINDOW), end = index.upperBound(time + WINDOW); p < end; p++)
+            sum += store.x(index.get(p));
+        return sum;
+    }
+
+    @Benchmark
+    public int retime() {
+        int sample = random.nextInt(moves);
+        store.setTime(sample, store.time(sample) + random.nextInt(3) - 1);
+        index.refresh();
+        return index.size();
+    }
+}
@@ -0,0 +1,36 @@
+package bench;
+
+import controllers.Recorder;
+import org.jnativehook.keyboard.NativeKeyEvent;
+import org.jnativehook.mouse.NativeMouseEvent;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Native to AWT code translation, run for every recorded key and button event.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TranslateBench {
+    private static final int[] KEYS = {NativeKeyEvent.VC_A, NativeKeyEvent.VC_ENTER, NativeKeyEvent.VC_SPACE, NativeKeyEvent.VC_F5,
+            NativeKeyEvent.VC_SHIFT, NativeKeyEvent.VC_1, NativeKeyEvent.VC_UP, NativeKeyEvent.VC_Z};
+    private static final int[] BUTTONS = {NativeMouseEvent.BUTTON1, NativeMouseEvent.BUTTON2, NativeMouseEvent.BUTTON3, NativeMouseEvent.BUTTON5};
+
+    @Benchmark
+    @OperationsPerInvocation(8)
+    public void translateKey(Blackhole blackhole) {
+        for (int key : KEYS) blackhole.consume(Recorder.translateKey(key));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(4)
+    public void translateButton(Blackhole blackhole) {
+        for (int button : BUTTONS) blackhole.consume(Recorder.translateButton(button));
+    }
+}
@@ -0,0 +1,51 @@
+package controllers;
+
+import bench.Recordings;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatching a whole recording through {@link Player#execute(long)}, stepping straight from one deadline to the
+ * next instead of waiting for it, into a {@link MemorySink}: the engine's own cost, without a display or the cost of
+ * injecting into the desktop.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PlayerBench {
+    @Param({"10000", "100000", "1000000"})
+    public int moves;
+
+    @Param({"false", "true"})
+    public boolean coalescing;
+
+    private Timeline timeline;
+    private MemorySink memory;
+    private Player player;
+
+    @Setup
+    public void setup() {
+        Recordings recording = new Recordings(moves);
+        timeline = Timeline.compile(recording.mousePositions, recording.mousePresses, recording.keyPresses, Timeline.Validation.REPAIR);
+        memory = new MemorySink();
+        player = new Player(coalescing ? new CoalescingSink(memory) : memory, new Player.Listener() {
+            public void progress(long time) {
+            }
+
+            public void finished() {
+            }
+        });
+    }
+
+    @Benchmark
+    public MemorySink execute() {
+        memory.clear();
+        player.load(timeline, new PlaybackOptions());
+        for (long elapsed = 0; elapsed >= 0; ) elapsed = player.execute(elapsed);
+        return memory;
+    }
+}
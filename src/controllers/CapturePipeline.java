@@ -0,0 +1,214 @@
+package controllers;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Captures the screen on a fixed real-time cadence and turns the captures into {@link Recorder.ScreenState}s off the
+ * EDT.
+ * <p>
+ * Capture, downscale and encode each run on their own thread with a bounded queue in between. When a stage falls
+ * behind, its input queue fills up and frames are dropped according to the {@link Backpressure} policy instead of
+ * stalling the stages upstream. Every stage keeps its own timing and drop counters.
+ */
+public class CapturePipeline {
+    public enum Backpressure {
+        /**
+         * Discard the oldest queued frame to make room, keeping the freshest screen.
+         */
+        DROP_OLDEST,
+        /**
+         * Discard the incoming frame, keeping an even spread of what was already queued.
+         */
+        DROP_NEWEST
+    }
+
+    public interface Encoder {
+        Recorder.ScreenState encode(long time, BufferedImage image);
+    }
+
+    public static class Stage {
+        public final String name;
+        private volatile long processed;
+        private volatile long totalNanos;
+        private volatile long maxNanos;
+        private final AtomicLong dropped = new AtomicLong();
+
+        Stage(String name) {
+            this.name = name;
+        }
+
+        void record(long nanos) {
+            processed++;
+            totalNanos += nanos;
+            if (nanos > maxNanos) maxNanos = nanos;
+        }
+
+        public long processed() {
+            return processed;
+        }
+
+        /**
+         * @return frames this stage never saw because its input queue was full
+         */
+        public long dropped() {
+            return dropped.get();
+        }
+
+        public double meanMillis() {
+            return processed == 0 ? 0 : totalNanos / 1e6 / processed;
+        }
+
+        public double maxMillis() {
+            return maxNanos / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d frames, mean %.2f ms, max %.2f ms, dropped %d", name, processed, meanMillis(), maxMillis(), dropped());
+        }
+    }
+
+    private static class Frame {
+        final long time;
+        final BufferedImage image;
+
+        Frame(long time, BufferedImage image) {
+            this.time = time;
+            this.image = image;
+        }
+    }
+
+    private static final Frame END = new Frame(-1, null);
+
+    public final Stage capture = new Stage("capture");
+    public final Stage downscale = new Stage("downscale");
+    public final Stage encode = new Stage("encode");
+
+    private final Robot robot;
+    private final Rectangle area;
+    private final long period;
+    private final Backpressure backpressure;
+    private final Encoder encoder;
+    private final Consumer<Recorder.ScreenState> output;
+    private final BlockingQueue<Frame> captured;
+    private final BlockingQueue<Frame> downscaled;
+
+    private ScheduledExecutorService scheduler;
+    private Thread downscaleThread;
+    private Thread encodeThread;
+    private long startTime;
+
+    /**
+     * @param period   milliseconds between captures, measured on the wall clock rather than in timer ticks
+     * @param capacity frames each queue can hold before the backpressure policy applies
+     * @param output   called on the encode thread with every finished screen state, in capture order
+     */
+    public CapturePipeline(Robot robot, Rectangle area, long period, int capacity, Backpressure backpressure, Encoder encoder, Consumer<Recorder.ScreenState> output) {
+        this.robot = robot;
+        this.area = area;
+        this.period = period;
+        this.backpressure = backpressure;
+        this.encoder = encoder;
+        this.output = output;
+        captured = new ArrayBlockingQueue<>(capacity);
+        downscaled = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * @param startTime {@link System#currentTimeMillis()} that frame times are relative to, same as recorded events
+     */
+    public void start(long startTime) {
+        this.startTime = startTime;
+        downscaleThread = new Thread(this::downscaleLoop, "Capture downscale");
+        encodeThread = new Thread(this::encodeLoop, "Capture encode");
+        downscaleThread.setDaemon(true);
+        encodeThread.setDaemon(true);
+        downscaleThread.start();
+        encodeThread.start();
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Capture");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::captureFrame, 0, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops capturing and lets the frames already in flight finish encoding in the background. Does not block on a
+     * full queue: the oldest queued frame is dropped to make room for the end of the stream.
+     */
+    public void stop() {
+        if (scheduler == null) return;
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        scheduler = null;
+        while (!captured.offer(END)) // never wait on a stalled downscale, give up a frame to make room
+            if (captured.poll() != null) downscale.dropped.incrementAndGet();
+    }
+
+    private void captureFrame() {
+        try {
+            long time = System.currentTimeMillis() - startTime;
+            long begin = System.nanoTime();
+            BufferedImage image = robot.createScreenCapture(area);
+            capture.record(System.nanoTime() - begin);
+            offer(captured, new Frame(time, image), downscale);
+        } catch (RuntimeException e) {
+            e.printStackTrace(); // an escaping exception would silently cancel the schedule
+        }
+    }
+
+    private void downscaleLoop() {
+        try {
+            for (Frame frame = captured.take(); frame != END; frame = captured.take()) {
+                long begin = System.nanoTime();
+                BufferedImage image = Recorder.resize(frame.image);
+                downscale.record(System.nanoTime() - begin);
+                offer(downscaled, new Frame(frame.time, image), encode);
+            }
+            putEnd(downscaled);
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    private void encodeLoop() {
+        try {
+            for (Frame frame = downscaled.take(); frame != END; frame = downscaled.take()) {
+                long begin = System.nanoTime();
+                Recorder.ScreenState state = encoder.encode(frame.time, frame.image);
+                encode.record(System.nanoTime() - begin);
+                if (state != null) output.accept(state);
+            }
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    private void offer(BlockingQueue<Frame> queue, Frame frame, Stage next) {
+        if (backpressure == Backpressure.DROP_NEWEST) {
+            if (!queue.offer(frame)) next.dropped.incrementAndGet();
+        } else while (!queue.offer(frame)) {
+            if (queue.poll() != null) next.dropped.incrementAndGet();
+        }
+    }
+
+    private static void putEnd(BlockingQueue<Frame> queue) {
+        try {
+            queue.put(END);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return capture + "\n" + downscale + "\n" + encode;
+    }
+}
@@ -0,0 +1,66 @@
+package controllers;
+
+/**
+ * Passes input on to another sink, holding moves back until something else happens or the player flushes, so
+ * of several moves in a row only the last one is injected, and a move to where the cursor already is never is.
+ */
+public class CoalescingSink implements InputSink {
+    private final InputSink sink;
+    private boolean pending;
+    private int pendingX, pendingY;
+    private int x = Integer.MIN_VALUE, y = Integer.MIN_VALUE;
+    private long coalesced;
+
+    public CoalescingSink(InputSink sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * @return moves dropped since the sink was created
+     */
+    public long coalesced() {
+        return coalesced;
+    }
+
+    public void mouseMove(int x, int y) {
+        if (pending) coalesced++;
+        pending = true;
+        pendingX = x;
+        pendingY = y;
+    }
+
+    public void mousePress(int buttons) {
+        flushMove();
+        sink.mousePress(buttons);
+    }
+
+    public void mouseRelease(int buttons) {
+        flushMove();
+        sink.mouseRelease(buttons);
+    }
+
+    public void keyPress(int keycode) {
+        flushMove();
+        sink.keyPress(keycode);
+    }
+
+    public void keyRelease(int keycode) {
+        flushMove();
+        sink.keyRelease(keycode);
+    }
+
+    public void flush() {
+        flushMove();
+        sink.flush();
+    }
+
+    private void flushMove() {
+        if (!pending) return;
+        pending = false;
+        if (pendingX == x && pendingY == y) {
+            coalesced++;
+            return;
+        }
+        sink.mouseMove(x = pendingX, y = pendingY);
+    }
+}
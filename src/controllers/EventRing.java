@@ -0,0 +1,126 @@
+package controllers;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Preallocated single-producer/single-consumer ring of primitive event records.
+ * <p>
+ * The native hook thread is the only producer and never allocates or blocks: when the ring is full the event is
+ * dropped and counted. The consumer drains in batches on its own thread.
+ */
+public class EventRing {
+    public static final int MOUSE_MOVE = 0;
+    public static final int MOUSE_DRAG = 1;
+    public static final int KEY_PRESS = 2;
+    public static final int KEY_RELEASE = 3;
+    public static final int BUTTON_PRESS = 4;
+    public static final int BUTTON_RELEASE = 5;
+
+    public interface Handler {
+        void accept(int type, long time, int a, int b);
+    }
+
+    private final int mask;
+    private final int[] type;
+    private final long[] time;
+    private final int[] a, b;
+
+    private final AtomicLong head = new AtomicLong(); // next slot to read, written by the consumer
+    private final AtomicLong tail = new AtomicLong(); // next slot to write, written by the producer
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong overflows = new AtomicLong();
+    private long cachedHead; // producer's last view of head
+    private boolean overflowing;
+
+    /**
+     * @param capacity rounded up to a power of two
+     */
+    public EventRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        mask = size - 1;
+        type = new int[size];
+        time = new long[size];
+        a = new int[size];
+        b = new int[size];
+    }
+
+    /**
+     * Producer side only.
+     *
+     * @return false if the ring was full and the event was dropped
+     */
+    public boolean offer(int type, long time, int a, int b) {
+        long t = tail.get();
+        if (t - cachedHead > mask) {
+            cachedHead = head.get();
+            if (t - cachedHead > mask) {
+                dropped.lazySet(dropped.get() + 1);
+                if (!overflowing) {
+                    overflowing = true;
+                    overflows.lazySet(overflows.get() + 1);
+                }
+                return false;
+            }
+        }
+        overflowing = false;
+        int slot = (int) t & mask;
+        this.type[slot] = type;
+        this.time[slot] = time;
+        this.a[slot] = a;
+        this.b[slot] = b;
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Consumer side only. Hands every event published so far to the handler.
+     *
+     * @return number of events drained
+     */
+    public int drain(Handler handler) {
+        long h = head.get();
+        long t = tail.get();
+        for (long i = h; i < t; i++) {
+            int slot = (int) i & mask;
+            handler.accept(type[slot], time[slot], a[slot], b[slot]);
+        }
+        head.lazySet(t);
+        return (int) (t - h);
+    }
+
+    /**
+     * Consumer side only. Discards everything published so far.
+     */
+    public void clear() {
+        head.lazySet(tail.get());
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    public int pending() {
+        return (int) (tail.get() - head.get());
+    }
+
+    /**
+     * @return total events published, not counting drops
+     */
+    public long published() {
+        return tail.get();
+    }
+
+    /**
+     * @return events lost because the ring was full, since it was created
+     */
+    public long dropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return number of times the ring filled up since it was created, each followed by one or more drops
+     */
+    public long overflows() {
+        return overflows.get();
+    }
+}
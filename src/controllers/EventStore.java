@@ -0,0 +1,301 @@
+package controllers;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Growable struct-of-arrays store for recorded events, one primitive column per field.
+ * <p>
+ * A {@link Kind#MOVE} store only allocates {@code time}, {@code x} and {@code y}; a {@link Kind#PRESS} store only
+ * allocates {@code time}, {@code code} and {@code duration}. Either way an event costs 16 bytes (plus growth slack),
+ * where the old {@code MousePos}/{@code Press} objects cost a 12 byte header, 8 byte time and two ints padded to
+ * 32 bytes, plus a 4 byte reference in the {@code ArrayList}: 36 bytes and one object for the GC per event.
+ */
+public class EventStore {
+    public enum Kind {MOVE, PRESS}
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    public final Kind kind;
+    private long[] time;
+    private int[] x, y;
+    private int[] code, duration;
+    private int size;
+    private boolean sorted = true;
+    private int timeVersion;
+    private int modCount;
+
+    public EventStore(Kind kind) {
+        this(kind, DEFAULT_CAPACITY);
+    }
+
+    public EventStore(Kind kind, int capacity) {
+        this.kind = kind;
+        capacity = Math.max(capacity, 1);
+        time = new long[capacity];
+        if (kind == Kind.MOVE) {
+            x = new int[capacity];
+            y = new int[capacity];
+        } else {
+            code = new int[capacity];
+            duration = new int[capacity];
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+        sorted = true;
+        timeVersion++;
+        modCount++;
+    }
+
+    /**
+     * Changes on every modification of the store.
+     */
+    public int modCount() {
+        return modCount;
+    }
+
+    /**
+     * Changes whenever events stop being appended in time order, so anything ordered by time has to be rebuilt.
+     * Appending in time order keeps the version.
+     */
+    public int timeVersion() {
+        return timeVersion;
+    }
+
+    /**
+     * @return whether the events are in time order, rechecking once after they may have been taken out of order
+     */
+    public boolean isSorted() {
+        if (!sorted) {
+            int i = 1;
+            while (i < size && time[i - 1] <= time[i]) i++;
+            sorted = i >= size;
+        }
+        return sorted;
+    }
+
+    public int addMove(long time, int x, int y) {
+        appending(time);
+        ensureCapacity(size + 1);
+        this.time[size] = time;
+        this.x[size] = x;
+        this.y[size] = y;
+        return size++;
+    }
+
+    public int addPress(long time, int code) {
+        return addPress(time, code, 0);
+    }
+
+    public int addPress(long time, int code, int duration) {
+        appending(time);
+        ensureCapacity(size + 1);
+        this.time[size] = time;
+        this.code[size] = code;
+        this.duration[size] = duration;
+        return size++;
+    }
+
+    public void addAll(EventStore other) {
+        if (other.kind != kind) throw new IllegalArgumentException("Cannot mix " + other.kind + " into " + kind);
+        if (other.size == 0) return;
+        if (!sorted || !other.isSorted() || size > 0 && other.time[0] < time[size - 1]) {
+            sorted = false;
+            timeVersion++;
+        }
+        ensureCapacity(size + other.size);
+        System.arraycopy(other.time, 0, time, size, other.size);
+        if (kind == Kind.MOVE) {
+            System.arraycopy(other.x, 0, x, size, other.size);
+            System.arraycopy(other.y, 0, y, size, other.size);
+        } else {
+            System.arraycopy(other.code, 0, code, size, other.size);
+            System.arraycopy(other.duration, 0, duration, size, other.size);
+        }
+        size += other.size;
+        modCount++;
+    }
+
+    public EventStore copy() {
+        EventStore copy = new EventStore(kind, size);
+        copy.addAll(this);
+        return copy;
+    }
+
+    public long time(int i) {
+        return time[i];
+    }
+
+    public int x(int i) {
+        return x[i];
+    }
+
+    public int y(int i) {
+        return y[i];
+    }
+
+    public int code(int i) {
+        return code[i];
+    }
+
+    public int duration(int i) {
+        return duration[i];
+    }
+
+    /**
+     * @return the time the event ends, which for presses includes the duration
+     */
+    public long endTime(int i) {
+        return kind == Kind.PRESS ? time[i] + duration[i] : time[i];
+    }
+
+    public long lastTime() {
+        return size == 0 ? 0 : endTime(size - 1);
+    }
+
+    public void setTime(int i, long time) {
+        this.time[i] = time;
+        sorted = false;
+        timeVersion++;
+        modCount++;
+    }
+
+    public void setPosition(int i, int x, int y) {
+        this.x[i] = x;
+        this.y[i] = y;
+        modCount++;
+    }
+
+    public void setDuration(int i, int duration) {
+        this.duration[i] = duration;
+        modCount++;
+    }
+
+    public int dist2(int i, int x, int y) {
+        return (x - this.x[i]) * (x - this.x[i]) + (y - this.y[i]) * (y - this.y[i]);
+    }
+
+    private void appending(long time) {
+        modCount++;
+        if (!sorted || size > 0 && time < this.time[size - 1]) {
+            sorted = false;
+            timeVersion++;
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= time.length) return;
+        int newCapacity = Math.max(capacity, time.length + (time.length >> 1));
+        time = Arrays.copyOf(time, newCapacity);
+        if (kind == Kind.MOVE) {
+            x = Arrays.copyOf(x, newCapacity);
+            y = Arrays.copyOf(y, newCapacity);
+        } else {
+            code = Arrays.copyOf(code, newCapacity);
+            duration = Arrays.copyOf(duration, newCapacity);
+        }
+    }
+
+    /**
+     * Reads and writes a store as the same array of objects the old {@code MousePos}/{@code Press} classes
+     * produced, so recordings saved before the column store still open.
+     */
+    public static abstract class Adapter extends TypeAdapter<EventStore> {
+        private final Kind kind;
+
+        protected Adapter(Kind kind) {
+            this.kind = kind;
+        }
+
+        @Override
+        public void write(JsonWriter out, EventStore store) throws IOException {
+            if (store == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginArray();
+            for (int i = 0; i < store.size; i++) {
+                out.beginObject();
+                if (kind == Kind.MOVE) {
+                    out.name("x").value(store.x[i]);
+                    out.name("y").value(store.y[i]);
+                } else {
+                    out.name("code").value(store.code[i]);
+                    out.name("duration").value(store.duration[i]);
+                }
+                out.name("time").value(store.time[i]);
+                out.endObject();
+            }
+            out.endArray();
+        }
+
+        @Override
+        public EventStore read(JsonReader in) throws IOException {
+            EventStore store = new EventStore(kind);
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return store;
+            }
+            in.beginArray();
+            while (in.hasNext()) readEvent(in, store);
+            in.endArray();
+            return store;
+        }
+
+        /**
+         * Reads one event object and appends it to the store.
+         */
+        public static void readEvent(JsonReader in, EventStore store) throws IOException {
+            long time = 0;
+            int a = 0, b = 0;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "time":
+                        time = in.nextLong();
+                        break;
+                    case "x":
+                    case "code":
+                        a = in.nextInt();
+                        break;
+                    case "y":
+                    case "duration":
+                        b = in.nextInt();
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            if (store.kind == Kind.MOVE) store.addMove(time, a, b);
+            else store.addPress(time, a, b);
+        }
+    }
+
+    public static class MoveAdapter extends Adapter {
+        public MoveAdapter() {
+            super(Kind.MOVE);
+        }
+    }
+
+    public static class PressAdapter extends Adapter {
+        public PressAdapter() {
+            super(Kind.PRESS);
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package controllers;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+/**
+ * Append-only container of grayscale screen frames stored as periodic keyframes and tile deltas in between.
+ * <p>
+ * A keyframe is the whole frame PackBits-compressed. Any other frame is split into {@value #TILE}x{@value #TILE}
+ * tiles; a bitmap marks the tiles that differ from the previous frame and only those are stored, as the PackBits of
+ * their XOR against the previous frame, which is mostly zero runs for a desktop that barely moved. Every frame
+ * record is {@code [type][time][width][height][length][payload]}.
+ * <p>
+ * The index of frame offsets is kept in memory, so any frame is decoded by seeking to its nearest keyframe and
+ * applying at most {@link #KEYFRAME_INTERVAL} - 1 deltas; stepping forward from the last decoded frame only applies
+ * the new deltas.
+ */
+public class FrameArchive {
+    public static final int KEYFRAME_INTERVAL = 30;
+    static final int TILE = 32;
+    private static final byte KEYFRAME = 0;
+    private static final byte DELTA = 1;
+    private static final int HEADER = 1 + 8 + 4 + 4 + 4;
+
+    private final File file;
+    private final RandomAccessFile data;
+
+    private long[] offsets = new long[64];
+    private long[] times = new long[64];
+    private int[] keyframes = new int[64];
+    private int frames;
+    private long length;
+    private boolean closed;
+
+    // encoder state: the last frame appended
+    private byte[] previous;
+    private int previousWidth, previousHeight;
+    private byte[] scratch = new byte[0];
+
+    // decoder state: the last frame decoded
+    private byte[] decoded;
+    private int decodedFrame = -1;
+    private int decodedWidth, decodedHeight;
+
+    public FrameArchive(File file) throws IOException {
+        this.file = file;
+        data = new RandomAccessFile(file, "rw");
+        data.setLength(0);
+    }
+
+    /**
+     * @return index of the new frame, or -1 if the archive is closed or the write failed
+     */
+    public synchronized int append(long time, BufferedImage image) {
+        if (closed) return -1;
+        int width = image.getWidth(), height = image.getHeight();
+        byte[] pixels = grayPixels(image);
+        boolean keyframe = frames % KEYFRAME_INTERVAL == 0 || previous == null || width != previousWidth || height != previousHeight;
+        int payload = keyframe ? PackBits.encode(pixels, 0, pixels.length, scratch(PackBits.maxEncodedLength(pixels.length)), 0) : encodeDelta(pixels, width, height);
+        try {
+            byte[] header = new byte[HEADER];
+            header[0] = keyframe ? KEYFRAME : DELTA;
+            putLong(header, 1, time);
+            putInt(header, 9, width);
+            putInt(header, 13, height);
+            putInt(header, 17, payload);
+            data.seek(length);
+            data.write(header);
+            data.write(scratch, 0, payload);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return -1;
+        }
+        if (frames == offsets.length) {
+            offsets = Arrays.copyOf(offsets, frames * 2);
+            times = Arrays.copyOf(times, frames * 2);
+            keyframes = Arrays.copyOf(keyframes, frames * 2);
+        }
+        offsets[frames] = length;
+        times[frames] = time;
+        keyframes[frames] = keyframe ? frames : keyframes[frames - 1];
+        length += HEADER + payload;
+        previous = pixels;
+        previousWidth = width;
+        previousHeight = height;
+        return frames++;
+    }
+
+    public synchronized BufferedImage decode(int frame) {
+        if (closed || frame < 0 || frame >= frames) return null;
+        try {
+            int from = keyframes[frame];
+            if (decodedFrame < from || decodedFrame > frame) from = readFrame(from);
+            else from = decodedFrame + 1;
+            for (int i = from; i <= frame; i++) readFrame(i);
+        } catch (IOException e) {
+            e.printStackTrace();
+            decodedFrame = -1;
+            return null;
+        }
+        BufferedImage image = new BufferedImage(decodedWidth, decodedHeight, BufferedImage.TYPE_BYTE_GRAY);
+        byte[] target = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        System.arraycopy(decoded, 0, target, 0, decodedWidth * decodedHeight);
+        return image;
+    }
+
+    public synchronized int frames() {
+        return frames;
+    }
+
+    public synchronized long time(int frame) {
+        return times[frame];
+    }
+
+    /**
+     * @return bytes written so far
+     */
+    public synchronized long length() {
+        return length;
+    }
+
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        try {
+            data.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public void delete() {
+        close();
+        file.delete();
+    }
+
+    /**
+     * @return the frame index following the one read
+     */
+    private int readFrame(int frame) throws IOException {
+        byte[] header = new byte[HEADER];
+        data.seek(offsets[frame]);
+        data.readFully(header);
+        int width = getInt(header, 9), height = getInt(header, 13), payload = getInt(header, 17);
+        byte[] input = scratch(payload);
+        data.readFully(input, 0, payload);
+        if (decoded == null || decoded.length < width * height) decoded = new byte[width * height];
+        decodedWidth = width;
+        decodedHeight = height;
+        if (header[0] == KEYFRAME) PackBits.decode(input, 0, payload, decoded, width * height);
+        else decodeDelta(input, payload, width, height);
+        decodedFrame = frame;
+        return frame + 1;
+    }
+
+    private int encodeDelta(byte[] pixels, int width, int height) {
+        int tilesX = (width + TILE - 1) / TILE, tilesY = (height + TILE - 1) / TILE;
+        int bitmap = (tilesX * tilesY + 7) / 8;
+        byte[] tile = new byte[TILE * TILE];
+        byte[] out = scratch(bitmap + tilesX * tilesY * PackBits.maxEncodedLength(TILE * TILE));
+        Arrays.fill(out, 0, bitmap, (byte) 0);
+        int position = bitmap;
+        for (int ty = 0, t = 0; ty < tilesY; ty++)
+            for (int tx = 0; tx < tilesX; tx++, t++) {
+                int n = 0;
+                boolean changed = false;
+                for (int y = ty * TILE; y < Math.min(height, ty * TILE + TILE); y++)
+                    for (int x = tx * TILE, i = y * width + x; x < Math.min(width, tx * TILE + TILE); x++, i++) {
+                        byte xor = (byte) (pixels[i] ^ previous[i]);
+                        changed |= xor != 0;
+                        tile[n++] = xor;
+                    }
+                if (!changed) continue;
+                out[t >> 3] |= 1 << (t & 7);
+                position = PackBits.encode(tile, 0, n, out, position);
+            }
+        return position;
+    }
+
+    private void decodeDelta(byte[] input, int payload, int width, int height) {
+        int tilesX = (width + TILE - 1) / TILE, tilesY = (height + TILE - 1) / TILE;
+        int position = (tilesX * tilesY + 7) / 8;
+        byte[] tile = new byte[TILE * TILE];
+        for (int ty = 0, t = 0; ty < tilesY; ty++)
+            for (int tx = 0; tx < tilesX; tx++, t++) {
+                if ((input[t >> 3] & (1 << (t & 7))) == 0) continue;
+                int w = Math.min(width, tx * TILE + TILE) - tx * TILE, h = Math.min(height, ty * TILE + TILE) - ty * TILE;
+                position = PackBits.decode(input, position, payload, tile, w * h);
+                for (int y = 0, n = 0; y < h; y++)
+                    for (int x = 0, i = (ty * TILE + y) * width + tx * TILE; x < w; x++, i++)
+                        decoded[i] ^= tile[n++];
+            }
+    }
+
+    private byte[] scratch(int size) {
+        if (scratch.length < size) scratch = new byte[size];
+        return scratch;
+    }
+
+    private static byte[] grayPixels(BufferedImage image) {
+        if (image.getType() != BufferedImage.TYPE_BYTE_GRAY) {
+            BufferedImage gray = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
+            Graphics2D g = gray.createGraphics();
+            g.drawImage(image, 0, 0, null);
+            g.dispose();
+            image = gray;
+        }
+        byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        return Arrays.copyOf(pixels, image.getWidth() * image.getHeight());
+    }
+
+    private static void putLong(byte[] b, int at, long v) {
+        for (int i = 0; i < 8; i++) b[at + i] = (byte) (v >>> (56 - 8 * i));
+    }
+
+    private static void putInt(byte[] b, int at, int v) {
+        for (int i = 0; i < 4; i++) b[at + i] = (byte) (v >>> (24 - 8 * i));
+    }
+
+    private static int getInt(byte[] b, int at) {
+        return (b[at] & 0xff) << 24 | (b[at + 1] & 0xff) << 16 | (b[at + 2] & 0xff) << 8 | (b[at + 3] & 0xff);
+    }
+
+    /**
+     * Apple PackBits run-length coding: a header byte n in 0..127 is followed by n + 1 literal bytes, n in
+     * -127..-1 by one byte repeated 1 - n times.
+     */
+    static class PackBits {
+        static int maxEncodedLength(int length) {
+            return length + (length + 127) / 128;
+        }
+
+        /**
+         * @return position in {@code out} after the encoded bytes
+         */
+        static int encode(byte[] in, int from, int to, byte[] out, int position) {
+            int i = from;
+            while (i < to) {
+                int run = 1;
+                while (i + run < to && run < 128 && in[i + run] == in[i]) run++;
+                if (run > 1) {
+                    out[position++] = (byte) (1 - run);
+                    out[position++] = in[i];
+                    i += run;
+                    continue;
+                }
+                int start = i, header = position++;
+                while (i < to && i - start < 128 && (i + 1 >= to || in[i + 1] != in[i] || i + 2 >= to || in[i + 2] != in[i]))
+                    out[position++] = in[i++];
+                out[header] = (byte) (i - start - 1);
+            }
+            return position;
+        }
+
+        /**
+         * Decodes until {@code length} bytes have been written to {@code out} or the input runs out.
+         *
+         * @return position in {@code in} after the consumed bytes
+         */
+        static int decode(byte[] in, int position, int limit, byte[] out, int length) {
+            int written = 0;
+            while (written < length && position < limit) {
+                int n = in[position++];
+                if (n >= 0) {
+                    System.arraycopy(in, position, out, written, n + 1);
+                    position += n + 1;
+                    written += n + 1;
+                } else if (n != -128) {
+                    Arrays.fill(out, written, written + 1 - n, in[position++]);
+                    written += 1 - n;
+                }
+            }
+            return position;
+        }
+    }
+}
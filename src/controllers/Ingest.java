@@ -0,0 +1,74 @@
+package controllers;
+
+/**
+ * Consumer side of the {@link EventRing}: turns raw hook events into moves and presses in the stores. Runs on the
+ * EDT so the stores are only ever touched by one thread, and allocates nothing beyond the stores' own growth.
+ */
+public class Ingest implements EventRing.Handler {
+    private final EventStore mousePositions;
+    private final EventStore mousePresses;
+    private final EventStore keyPresses;
+    private final OpenPresses openKeys = new OpenPresses();
+    private final OpenPresses openButtons = new OpenPresses();
+    public final PathSimplifier pathSimplifier;
+    private int unmatchedReleases;
+
+    public Ingest(EventStore mousePositions, EventStore mousePresses, EventStore keyPresses, double tolerance, long timeTolerance) {
+        this.mousePositions = mousePositions;
+        this.mousePresses = mousePresses;
+        this.keyPresses = keyPresses;
+        pathSimplifier = new PathSimplifier(mousePositions, tolerance, timeTolerance);
+    }
+
+    /**
+     * Forgets held keys and buttons and the path so far, for a new recording into the emptied stores.
+     */
+    public void reset(double tolerance, long timeTolerance) {
+        openKeys.clear();
+        openButtons.clear();
+        unmatchedReleases = 0;
+        pathSimplifier.reset(tolerance, timeTolerance);
+    }
+
+    /**
+     * @return releases of keys or buttons that were already held when recording started
+     */
+    public int unmatchedReleases() {
+        return unmatchedReleases;
+    }
+
+    @Override
+    public void accept(int type, long time, int a, int b) {
+        switch (type) {
+            case EventRing.MOUSE_MOVE:
+            case EventRing.MOUSE_DRAG:
+                pathSimplifier.add(time, a, b);
+                break;
+            case EventRing.KEY_PRESS:
+                press(keyPresses, openKeys, Recorder.translateKey(a), time);
+                break;
+            case EventRing.KEY_RELEASE:
+                release(keyPresses, openKeys, Recorder.translateKey(a), time);
+                break;
+            case EventRing.BUTTON_PRESS:
+                pathSimplifier.pin();
+                press(mousePresses, openButtons, Recorder.translateButton(a), time);
+                break;
+            case EventRing.BUTTON_RELEASE:
+                pathSimplifier.pin();
+                release(mousePresses, openButtons, Recorder.translateButton(a), time);
+                break;
+        }
+    }
+
+    private void press(EventStore presses, OpenPresses open, int code, long time) {
+        if (open.get(code) >= 0) return; // auto-repeat while held, the first press already covers it
+        open.put(code, presses.addPress(time, code));
+    }
+
+    private void release(EventStore presses, OpenPresses open, int code, long time) {
+        int press = open.remove(code);
+        if (press >= 0) presses.setDuration(press, (int) (time - presses.time(press)));
+        else unmatchedReleases++;
+    }
+}
@@ -0,0 +1,30 @@
+package controllers;
+
+/**
+ * Where playback injects input. {@link RobotSink} drives the real desktop; {@link MemorySink} and
+ * {@link CoalescingSink} let playback run and be checked without a display, at full speed and apart from the cost of
+ * injection.
+ */
+public interface InputSink {
+    byte MOVE = 0;
+    byte KEY_PRESS = 1;
+    byte KEY_RELEASE = 2;
+    byte BUTTON_PRESS = 3;
+    byte BUTTON_RELEASE = 4;
+
+    void mouseMove(int x, int y);
+
+    void mousePress(int buttons);
+
+    void mouseRelease(int buttons);
+
+    void keyPress(int keycode);
+
+    void keyRelease(int keycode);
+
+    /**
+     * Called once the player has dispatched everything due at one wake-up.
+     */
+    default void flush() {
+    }
+}
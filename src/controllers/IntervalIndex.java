@@ -0,0 +1,84 @@
+package controllers;
+
+import java.util.Arrays;
+
+/**
+ * Finds the presses of an {@link EventStore} whose {@code [time, time + duration]} overlaps a time window in
+ * O(log n + k), however the presses overlap each other.
+ * <p>
+ * Presses are kept in start order by a {@link TimeIndex}, which is read as an implicit balanced search tree: the
+ * root of any range of positions is its middle one. Each root stores the latest end among the presses of its range,
+ * so a query walks only the starts up to the end of the window and skips every subtree that ends before the window
+ * begins. Any modification of the store, such as presses dragged to new times or a duration set on release,
+ * rebuilds the ends on the next query.
+ */
+public class IntervalIndex {
+    private final EventStore store;
+    private final TimeIndex starts;
+    private long[] maxEnd = new long[0];
+    private int size;
+    private int modCount;
+
+    private int[] results = new int[16];
+    private int count;
+
+    public IntervalIndex(EventStore store) {
+        this.store = store;
+        starts = new TimeIndex(store);
+        modCount = store.modCount() - 1;
+    }
+
+    /**
+     * Collects the presses overlapping {@code [from, to]} in start order, to be read with {@link #result(int)}.
+     * The results stay valid until the next query.
+     *
+     * @return number of presses found
+     */
+    public int overlapping(long from, long to) {
+        refresh();
+        count = 0;
+        collect(0, size, starts.upperBound(to), from);
+        return count;
+    }
+
+    /**
+     * @return index in the store of the {@code i}th press found by the last query
+     */
+    public int result(int i) {
+        return results[i];
+    }
+
+    private void refresh() {
+        if (modCount == store.modCount()) return;
+        modCount = store.modCount();
+        starts.refresh();
+        size = store.size();
+        if (maxEnd.length < size) maxEnd = new long[size];
+        build(0, size);
+    }
+
+    private long build(int from, int to) {
+        if (from >= to) return Long.MIN_VALUE;
+        int mid = (from + to) >>> 1;
+        long end = Math.max(store.endTime(starts.get(mid)), Math.max(build(from, mid), build(mid + 1, to)));
+        maxEnd[mid] = end;
+        return end;
+    }
+
+    /**
+     * @param limit positions from here on start after the window
+     */
+    private void collect(int from, int to, int limit, long windowStart) {
+        if (from >= to || from >= limit) return;
+        int mid = (from + to) >>> 1;
+        if (maxEnd[mid] < windowStart) return;
+        collect(from, mid, limit, windowStart);
+        if (mid >= limit) return;
+        int press = starts.get(mid);
+        if (store.endTime(press) >= windowStart) {
+            if (count == results.length) results = Arrays.copyOf(results, count * 2);
+            results[count++] = press;
+        }
+        collect(mid + 1, to, limit, windowStart);
+    }
+}
@@ -0,0 +1,89 @@
+package controllers;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+/**
+ * Fixed-size log-linear histogram of non-negative nanosecond values.
+ * <p>
+ * Values below 64 get their own bucket, above that every power of two is split into 32 linear buckets, so any
+ * reported percentile is within about 3% of the true value. Recording is a couple of arithmetic ops and an array
+ * increment with no allocation. Meant to be written by a single thread and read once it is done.
+ */
+public class LatencyHistogram {
+    private static final int LINEAR = 64;
+    private static final int SUB_BITS = 5;
+    private static final int SUB = 1 << SUB_BITS;
+
+    private final long[] counts = new long[LINEAR + (63 - SUB_BITS) * SUB];
+    private long count;
+    private long sum;
+    private long max;
+
+    public void record(long value) {
+        if (value < 0) value = 0;
+        counts[bucket(value)]++;
+        count++;
+        sum += value;
+        if (value > max) max = value;
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        sum = 0;
+        max = 0;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public long max() {
+        return max;
+    }
+
+    public double mean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return upper bound of the bucket holding that percentile, never above {@link #max()}
+     */
+    public long percentile(double percentile) {
+        if (count == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) return Math.min(upperBound(i), max);
+        }
+        return max;
+    }
+
+    public void print(String name, PrintWriter out) {
+        out.printf("%s: count=%d mean=%.0fns p50=%dns p99=%dns p999=%dns max=%dns%n",
+                name, count, mean(), percentile(50), percentile(99), percentile(99.9), max);
+        for (int i = 0; i < counts.length; i++)
+            if (counts[i] > 0) out.printf("  %d-%d %d%n", lowerBound(i), upperBound(i), counts[i]);
+    }
+
+    private static int bucket(long value) {
+        if (value < LINEAR) return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return LINEAR + (shift - 1) * SUB + (int) (value >>> shift) - SUB;
+    }
+
+    private static long lowerBound(int bucket) {
+        if (bucket < LINEAR) return bucket;
+        int shift = (bucket - LINEAR) / SUB + 1;
+        return (long) ((bucket - LINEAR) % SUB + SUB) << shift;
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < LINEAR) return bucket;
+        int shift = (bucket - LINEAR) / SUB + 1;
+        return ((long) ((bucket - LINEAR) % SUB + SUB + 1) << shift) - 1;
+    }
+}
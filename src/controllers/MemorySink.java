@@ -0,0 +1,85 @@
+package controllers;
+
+import java.util.Arrays;
+
+/**
+ * Records every injected action with the {@link System#nanoTime()} it arrived at, in growable primitive arrays.
+ */
+public class MemorySink implements InputSink {
+    private long[] nanos = new long[1024];
+    private byte[] types = new byte[1024];
+    private int[] a = new int[1024], b = new int[1024];
+    private int size;
+
+    public void mouseMove(int x, int y) {
+        add(MOVE, x, y);
+    }
+
+    public void mousePress(int buttons) {
+        add(BUTTON_PRESS, buttons, 0);
+    }
+
+    public void mouseRelease(int buttons) {
+        add(BUTTON_RELEASE, buttons, 0);
+    }
+
+    public void keyPress(int keycode) {
+        add(KEY_PRESS, keycode, 0);
+    }
+
+    public void keyRelease(int keycode) {
+        add(KEY_RELEASE, keycode, 0);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public long nanos(int i) {
+        return nanos[i];
+    }
+
+    public byte type(int i) {
+        return types[i];
+    }
+
+    /**
+     * @return x of a move, or the key code or button mask
+     */
+    public int a(int i) {
+        return a[i];
+    }
+
+    /**
+     * @return y of a move
+     */
+    public int b(int i) {
+        return b[i];
+    }
+
+    /**
+     * @return number of recorded actions of the given type
+     */
+    public int count(byte type) {
+        int count = 0;
+        for (int i = 0; i < size; i++) if (types[i] == type) count++;
+        return count;
+    }
+
+    private void add(byte type, int a, int b) {
+        if (size == types.length) {
+            nanos = Arrays.copyOf(nanos, size * 2);
+            types = Arrays.copyOf(types, size * 2);
+            this.a = Arrays.copyOf(this.a, size * 2);
+            this.b = Arrays.copyOf(this.b, size * 2);
+        }
+        nanos[size] = System.nanoTime();
+        types[size] = type;
+        this.a[size] = a;
+        this.b[size++] = b;
+    }
+}
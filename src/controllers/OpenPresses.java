@@ -0,0 +1,93 @@
+package controllers;
+
+import java.util.Arrays;
+
+/**
+ * Presses that are currently held down, keyed by translated key or button code and pointing at the press's index in
+ * its {@link EventStore}. Open addressing over primitive arrays, so pairing a release with its press is O(1) and
+ * does not allocate.
+ */
+public class OpenPresses {
+    private static final int EMPTY = Integer.MIN_VALUE;
+
+    private int[] codes;
+    private int[] presses;
+    private int size;
+
+    public OpenPresses() {
+        codes = new int[16];
+        presses = new int[16];
+        Arrays.fill(codes, EMPTY);
+    }
+
+    /**
+     * @return index of the open press for this code, or -1 if the code is not held
+     */
+    public int get(int code) {
+        int slot = find(code);
+        return codes[slot] == code ? presses[slot] : -1;
+    }
+
+    public void put(int code, int press) {
+        int slot = find(code);
+        if (codes[slot] != code) {
+            if ((size + 1) * 2 > codes.length) {
+                grow();
+                slot = find(code);
+            }
+            codes[slot] = code;
+            size++;
+        }
+        presses[slot] = press;
+    }
+
+    /**
+     * @return index of the press that was open for this code, or -1 if it was never seen
+     */
+    public int remove(int code) {
+        int slot = find(code);
+        if (codes[slot] != code) return -1;
+        int press = presses[slot];
+        codes[slot] = EMPTY;
+        size--;
+        // re-insert the rest of the probe run so lookups never stop early at the hole
+        int mask = codes.length - 1;
+        for (int i = (slot + 1) & mask; codes[i] != EMPTY; i = (i + 1) & mask) {
+            int movedCode = codes[i], movedPress = presses[i];
+            codes[i] = EMPTY;
+            int to = find(movedCode);
+            codes[to] = movedCode;
+            presses[to] = movedPress;
+        }
+        return press;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(codes, EMPTY);
+        size = 0;
+    }
+
+    private int find(int code) {
+        int mask = codes.length - 1;
+        int slot = (code * 0x9E3779B9 >>> 16) & mask;
+        while (codes[slot] != EMPTY && codes[slot] != code) slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    private void grow() {
+        int[] oldCodes = codes, oldPresses = presses;
+        codes = new int[oldCodes.length * 2];
+        presses = new int[oldCodes.length * 2];
+        Arrays.fill(codes, EMPTY);
+        for (int i = 0; i < oldCodes.length; i++)
+            if (oldCodes[i] != EMPTY) {
+                int slot = find(oldCodes[i]);
+                codes[slot] = oldCodes[i];
+                presses[slot] = oldPresses[i];
+            }
+    }
+}
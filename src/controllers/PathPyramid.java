@@ -0,0 +1,236 @@
+package controllers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Levels of detail of a mouse path for drawing long windows with a bounded number of primitives.
+ * <p>
+ * Level {@code k} (from 1) cuts time into buckets of {@code BASE << (k - 1)} milliseconds and keeps, for every bucket
+ * that has samples, their count and at most six of them in time order: the first, the last and the ones furthest
+ * left, right, up and down. A polyline through the kept samples covers the same extent as the full path at bucket
+ * resolution, so spikes survive that averaging or Douglas-Peucker with a coarse tolerance would flatten. Every
+ * level is built from the one below, so the whole pyramid costs O(n). Level 0, the samples themselves, is
+ * drawn without the pyramid.
+ * <p>
+ * The pyramid is built when first asked for a level and rebuilt after the store changes. Samples appended in time
+ * order, as while recording, only rebuild the last bucket of every level.
+ */
+public class PathPyramid {
+    public static final int BASE = 4;
+    private static final int MAX_LEVELS = 24;
+    private static final int KEEP = 6;
+
+    private static class Level {
+        final long width;
+        long[] bucket;
+        int[] count;
+        int[] repStart; // reps of bucket b are reps[repStart[b]] to reps[repStart[b + 1]]
+        int[] reps;
+        int size;
+
+        Level(long width, int capacity) {
+            this.width = width;
+            bucket = new long[capacity];
+            count = new int[capacity];
+            repStart = new int[capacity + 1];
+            reps = new int[capacity * 2];
+        }
+
+        void add(long key, int samples, int[] kept, int keptCount) {
+            if (size == bucket.length) {
+                bucket = Arrays.copyOf(bucket, size * 2);
+                count = Arrays.copyOf(count, size * 2);
+                repStart = Arrays.copyOf(repStart, size * 2 + 1);
+            }
+            int start = repStart[size];
+            if (start + keptCount > reps.length) reps = Arrays.copyOf(reps, Math.max(reps.length * 2, start + keptCount));
+            bucket[size] = key;
+            count[size] = samples;
+            System.arraycopy(kept, 0, reps, start, keptCount);
+            repStart[++size] = start + keptCount;
+        }
+    }
+
+    private final EventStore store;
+    private final TimeIndex index;
+    private final ArrayList<Level> levels = new ArrayList<>();
+    private int modCount, timeVersion;
+    private int builtSize;
+    private boolean built;
+
+    private final int[] candidates = new int[KEEP * 2];
+    private final int[] kept = new int[KEEP];
+
+    public PathPyramid(EventStore store, TimeIndex index) {
+        this.store = store;
+        this.index = index;
+    }
+
+    /**
+     * @return the lowest level whose buckets are at least {@code bucketWidth} milliseconds wide, or the top one
+     */
+    public int level(long bucketWidth) {
+        refresh();
+        for (int level = 1; level <= levels.size(); level++)
+            if (levels.get(level - 1).width >= bucketWidth) return level;
+        return levels.size();
+    }
+
+    public long width(int level) {
+        return levels.get(level - 1).width;
+    }
+
+    /**
+     * @return first bucket of {@code level} that ends after {@code time}
+     */
+    public int from(int level, long time) {
+        Level l = levels.get(level - 1);
+        int i = Arrays.binarySearch(l.bucket, 0, l.size, Math.floorDiv(time, l.width));
+        return i >= 0 ? i : -i - 1;
+    }
+
+    /**
+     * @return first bucket of {@code level} that starts after {@code time}
+     */
+    public int to(int level, long time) {
+        Level l = levels.get(level - 1);
+        int i = Arrays.binarySearch(l.bucket, 0, l.size, Math.floorDiv(time, l.width));
+        return i >= 0 ? i + 1 : -i - 1;
+    }
+
+    /**
+     * @return number of samples in {@code bucket}
+     */
+    public int count(int level, int bucket) {
+        return levels.get(level - 1).count[bucket];
+    }
+
+    public int repsFrom(int level, int bucket) {
+        return levels.get(level - 1).repStart[bucket];
+    }
+
+    public int repsTo(int level, int bucket) {
+        return levels.get(level - 1).repStart[bucket + 1];
+    }
+
+    /**
+     * @return index in the store of a kept sample, {@code rep} in {@code [repsFrom, repsTo)} of a bucket
+     */
+    public int rep(int level, int rep) {
+        return index.get(levels.get(level - 1).reps[rep]);
+    }
+
+    private void refresh() {
+        int n = index.size();
+        if (built && modCount == store.modCount()) return;
+        // every single append bumps the store's modCount by one, so a matching difference means nothing but appends
+        boolean appended = built && timeVersion == store.timeVersion() && store.modCount() - modCount == n - builtSize;
+        built = true;
+        modCount = store.modCount();
+        timeVersion = store.timeVersion();
+        if (!appended) {
+            levels.clear();
+            levels.add(new Level(BASE, Math.max(n / 4, 16)));
+            builtSize = 0;
+        }
+        // drop the buckets the new samples can fall into and rebuild them, then their parents level by level
+        Level level = levels.get(0);
+        int from = builtSize;
+        if (builtSize > 0) {
+            int b = cut(level, Math.floorDiv(index.time(builtSize), BASE));
+            if (b < level.size) from = level.reps[level.repStart[b]];
+            level.size = b;
+        }
+        int changed = level.size; // first bucket of the level below that was rebuilt
+        builtSize = n;
+        for (int to; from < n; from = to) {
+            long key = Math.floorDiv(index.time(from), BASE);
+            to = from + 1;
+            while (to < n && Math.floorDiv(index.time(to), BASE) == key) to++;
+            int candidateCount = 0;
+            if (to - from <= candidates.length) for (int p = from; p < to; p++) candidates[candidateCount++] = p;
+            else candidateCount = extremes(from, to);
+            level.add(key, to - from, kept, keep(candidateCount));
+        }
+        for (int l = 1; l < MAX_LEVELS && (l < levels.size() || level.size > 1); l++) {
+            if (l == levels.size()) {
+                levels.add(new Level(level.width * 2, (level.size + 1) / 2 + 1));
+                changed = 0;
+            }
+            Level parent = levels.get(l);
+            if (changed >= level.size) break; // nothing new below, nothing to redo above
+            long firstKey = level.bucket[changed] >> 1;
+            parent.size = cut(parent, firstKey);
+            int b = cut(level, firstKey << 1);
+            changed = parent.size;
+            for (int next; b < level.size; b = next) {
+                long key = level.bucket[b] >> 1;
+                int samples = 0, candidateCount = 0;
+                for (next = b; next < level.size && level.bucket[next] >> 1 == key; next++) {
+                    samples += level.count[next];
+                    for (int r = level.repStart[next]; r < level.repStart[next + 1]; r++) candidates[candidateCount++] = level.reps[r];
+                }
+                parent.add(key, samples, kept, keep(candidateCount));
+            }
+            level = parent;
+        }
+    }
+
+    /**
+     * @return number of buckets of {@code level} before {@code key}
+     */
+    private static int cut(Level level, long key) {
+        int i = Arrays.binarySearch(level.bucket, 0, level.size, key);
+        return i >= 0 ? i : -i - 1;
+    }
+
+    /**
+     * Puts the extreme samples among positions {@code [from, to)} into the candidates without scanning them twice.
+     */
+    private int extremes(int from, int to) {
+        int minX = from, maxX = from, minY = from, maxY = from;
+        for (int p = from + 1; p < to; p++) {
+            int e = index.get(p);
+            if (store.x(e) < store.x(index.get(minX))) minX = p;
+            if (store.x(e) > store.x(index.get(maxX))) maxX = p;
+            if (store.y(e) < store.y(index.get(minY))) minY = p;
+            if (store.y(e) > store.y(index.get(maxY))) maxY = p;
+        }
+        candidates[0] = from;
+        candidates[1] = minX;
+        candidates[2] = maxX;
+        candidates[3] = minY;
+        candidates[4] = maxY;
+        candidates[5] = to - 1;
+        return KEEP;
+    }
+
+    /**
+     * Reduces the candidates, positions in time order, to the first, last and extreme ones, sorted and distinct.
+     *
+     * @return number of kept positions
+     */
+    private int keep(int candidateCount) {
+        int first = candidates[0], last = candidates[0], minX = first, maxX = first, minY = first, maxY = first;
+        for (int c = 1; c < candidateCount; c++) {
+            int p = candidates[c], e = index.get(p);
+            first = Math.min(first, p);
+            last = Math.max(last, p);
+            if (store.x(e) < store.x(index.get(minX))) minX = p;
+            if (store.x(e) > store.x(index.get(maxX))) maxX = p;
+            if (store.y(e) < store.y(index.get(minY))) minY = p;
+            if (store.y(e) > store.y(index.get(maxY))) maxY = p;
+        }
+        kept[0] = first;
+        kept[1] = minX;
+        kept[2] = maxX;
+        kept[3] = minY;
+        kept[4] = maxY;
+        kept[5] = last;
+        Arrays.sort(kept);
+        int count = 1;
+        for (int k = 1; k < KEEP; k++) if (kept[k] != kept[count - 1]) kept[count++] = kept[k];
+        return count;
+    }
+}
@@ -0,0 +1,137 @@
+package controllers;
+
+/**
+ * Drops mouse samples as they are recorded when the {@link Player} would reproduce them anyway by interpolating
+ * between the samples around them.
+ * <p>
+ * An opening window: the last kept sample is the anchor, and every new sample is tried as the end of a segment from
+ * it. While every sample since the anchor lies within {@code tolerance} pixels of where the segment puts the cursor
+ * at some moment within {@code timeTolerance} milliseconds of its own time, the samples in between are dropped.
+ * Once one does not, the previous end is kept and becomes the anchor. A window is bounded in samples and time, so
+ * checking a sample costs at most {@link #MAX_WINDOW} distances and the stored path never lags far behind the live
+ * one.
+ */
+public class PathSimplifier {
+    private static final int MAX_WINDOW = 128;
+    private static final long MAX_SPAN = 1000;
+
+    private final EventStore store;
+    private double tolerance;
+    private long timeTolerance;
+
+    private final long[] times = new long[MAX_WINDOW];
+    private final int[] xs = new int[MAX_WINDOW];
+    private final int[] ys = new int[MAX_WINDOW];
+    private int window; // samples since the anchor, the last of them is the end of the segment and not stored yet
+    private long anchorTime;
+    private int anchorX, anchorY;
+    private boolean anchored, keepNext;
+    private double windowError;
+
+    private int samples, kept;
+    private double maxError;
+
+    public PathSimplifier(EventStore store, double tolerance, long timeTolerance) {
+        this.store = store;
+        reset(tolerance, timeTolerance);
+    }
+
+    /**
+     * Forgets the path so far and the statistics, for a new recording.
+     */
+    public void reset(double tolerance, long timeTolerance) {
+        this.tolerance = tolerance;
+        this.timeTolerance = timeTolerance;
+        window = 0;
+        anchored = keepNext = false;
+        samples = kept = 0;
+        maxError = 0;
+    }
+
+    public void add(long time, int x, int y) {
+        samples++;
+        if (!anchored || keepNext) {
+            flush();
+            keep(time, x, y);
+            keepNext = false;
+            return;
+        }
+        if (window > 0) {
+            double error = window < MAX_WINDOW && time - anchorTime <= MAX_SPAN ? error(time, x, y) : Double.MAX_VALUE;
+            if (error > tolerance) flush();
+            else windowError = error;
+        }
+        if (window == 0) windowError = 0;
+        times[window] = time;
+        xs[window] = x;
+        ys[window] = y;
+        window++;
+    }
+
+    /**
+     * Stores the latest sample, and the next one as soon as it arrives, so the path is exact on both sides of a
+     * button press or release that happens between them.
+     */
+    public void pin() {
+        flush();
+        keepNext = true;
+    }
+
+    /**
+     * Stores the end of the current segment.
+     */
+    public void flush() {
+        if (window == 0) return;
+        maxError = Math.max(maxError, windowError);
+        window--;
+        keep(times[window], xs[window], ys[window]);
+    }
+
+    public double compressionRatio() {
+        return kept == 0 ? 1 : samples / (double) kept;
+    }
+
+    /**
+     * @return furthest a dropped sample lies from the interpolated path, in pixels
+     */
+    public double maxError() {
+        return maxError;
+    }
+
+    private void keep(long time, int x, int y) {
+        store.addMove(time, x, y);
+        kept++;
+        anchored = true;
+        anchorTime = time;
+        anchorX = x;
+        anchorY = y;
+        window = 0;
+    }
+
+    /**
+     * @return how far the samples in the window lie from the segment from the anchor to the given sample
+     */
+    private double error(long time, int x, int y) {
+        double max = 0, span = time - anchorTime, dx = x - anchorX, dy = y - anchorY;
+        for (int i = 0; i < window; i++) {
+            // the part of the segment the cursor travels within the time tolerance of the sample
+            double from = 0, to = 1;
+            if (span > 0) {
+                from = Math.max(0, (times[i] - timeTolerance - anchorTime) / span);
+                to = Math.min(1, (times[i] + timeTolerance - anchorTime) / span);
+                if (from > to) from = to = Math.min(1, Math.max(0, (times[i] - anchorTime) / span));
+            }
+            double x0 = anchorX + dx * from, y0 = anchorY + dy * from;
+            double sx = dx * (to - from), sy = dy * (to - from), length2 = sx * sx + sy * sy;
+            double u = length2 == 0 ? 0 : Math.max(0, Math.min(1, ((xs[i] - x0) * sx + (ys[i] - y0) * sy) / length2));
+            max = Math.max(max, Math.hypot(xs[i] - x0 - sx * u, ys[i] - y0 - sy * u));
+            if (max > tolerance) break;
+        }
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Mouse path: kept %d of %d samples (%.1fx), max error %.2f px", kept, samples, compressionRatio(), maxError);
+    }
+}
@@ -0,0 +1,81 @@
+package controllers;
+
+/**
+ * How fast a {@link Player} plays a timeline back.
+ * <p>
+ * Every stretch between two consecutive events, releases included, is shrunk to {@link #collapsedGap} if it is longer
+ * than {@link #idleThreshold}, and then divided by {@link #speed}. Presses keep their recorded duration unless
+ * {@link #scaleDurations} is set, so a key held at 10x speed is still held long enough to register, but a release
+ * never moves past the next event recorded after it.
+ * <p>
+ * The timeline is played {@link #iterations} times in a row, each starting {@link #iterationGap} after the last one
+ * let go of everything.
+ */
+public class PlaybackOptions {
+    /**
+     * What to do with mouse samples that are all overdue by the time playback wakes up. Presses and releases are
+     * always injected, each after the sample recorded before it.
+     */
+    public enum MoveCatchUp {
+        /**
+         * Inject every one of them.
+         */
+        ALL,
+        /**
+         * Inject only the latest.
+         */
+        LATEST,
+        /**
+         * Inject one move to where the cursor is by now, between the latest overdue sample and the next one.
+         */
+        INTERPOLATE
+    }
+
+    public double speed = 1;
+    /**
+     * Milliseconds without events after which the rest of the gap is skipped, 0 to keep every gap.
+     */
+    public long idleThreshold;
+    /**
+     * Milliseconds an idle gap is shrunk to.
+     */
+    public long collapsedGap = 500;
+    /**
+     * Whether releases follow the scaled timeline instead of keeping the recorded press duration.
+     */
+    public boolean scaleDurations;
+    /**
+     * Times to play the timeline, 0 to loop until stopped.
+     */
+    public int iterations = 1;
+    /**
+     * Milliseconds between the end of one iteration and the start of the next.
+     */
+    public long iterationGap;
+    public MoveCatchUp moveCatchUp = MoveCatchUp.LATEST;
+
+    /**
+     * @return nanoseconds of playback a gap of {@code millis} recorded milliseconds takes
+     */
+    public long gap(long millis) {
+        if (idleThreshold > 0 && millis > idleThreshold) millis = Math.min(millis, collapsedGap);
+        return speed == 1 ? millis * 1_000_000L : (long) (millis * 1_000_000L / speed);
+    }
+
+    public void validate() {
+        if (!(speed > 0) || Double.isInfinite(speed)) throw new IllegalArgumentException("Playback speed " + speed + " is not positive");
+        if (idleThreshold < 0 || collapsedGap < 0) throw new IllegalArgumentException("Idle gap " + idleThreshold + " / " + collapsedGap + " is negative");
+        if (moveCatchUp == null) throw new IllegalArgumentException("No move catch-up policy");
+        if (iterations < 0 || iterationGap < 0) throw new IllegalArgumentException(iterations + " iterations " + iterationGap + " ms apart");
+    }
+
+    @Override
+    public String toString() {
+        String text = speed + "x";
+        if (idleThreshold > 0) text += ", idle gaps over " + idleThreshold + " ms cut to " + collapsedGap + " ms";
+        if (scaleDurations) text += ", durations scaled";
+        if (moveCatchUp != MoveCatchUp.LATEST) text += ", " + moveCatchUp.name().toLowerCase() + " overdue moves";
+        if (iterations != 1) text += ", " + (iterations == 0 ? "looping" : iterations + " times") + (iterationGap > 0 ? " " + iterationGap + " ms apart" : "");
+        return text;
+    }
+}
@@ -0,0 +1,455 @@
+package controllers;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays a recording back on its own thread, sleeping until the next event is due instead of polling on the EDT.
+ * <p>
+ * Deadlines are kept in {@link System#nanoTime()}. The thread parks until shortly before a deadline and spins the
+ * rest of the way; the spin margin follows how late {@link LockSupport#parkNanos(long)} has actually been waking up
+ * on this machine, so dispatch stays within a fraction of a millisecond without spinning through long gaps.
+ * Between two mouse samples the cursor follows the line joining them.
+ * <p>
+ * {@link PlaybackOptions} map the recorded times onto playback time once per {@link #play(Timeline, PlaybackOptions)},
+ * so speeding up or cutting idle gaps costs nothing while playing. Looping replays the same schedule: each iteration
+ * only rewinds the cursor and moves the start time, without allocating.
+ */
+public class Player implements Runnable {
+    public interface Listener {
+        /**
+         * Called on the playback thread at most once per {@link #PROGRESS_INTERVAL} nanoseconds.
+         */
+        void progress(long time);
+
+        /**
+         * Called on the playback thread once every event has been dispatched, or playback was stopped.
+         */
+        void finished();
+
+        /**
+         * Called on the playback thread after each iteration that played to the end, before the gap to the next.
+         *
+         * @param duration nanoseconds the iteration took
+         * @param drift    nanoseconds it took longer than {@link #length()}
+         */
+        default void iterationFinished(int iteration, long duration, long drift) {
+        }
+    }
+
+    public static final long PROGRESS_INTERVAL = 16_000_000L;
+    /**
+     * Nanoseconds between the positions filled in along a segment between two mouse samples further apart than this,
+     * which is what lets {@link PathSimplifier} drop the samples in between.
+     */
+    public static final long INTERPOLATION_STEP = 8_000_000L;
+    private static final long MIN_SPIN = 50_000L;
+    private static final long MAX_SPIN = 20_000_000L;
+
+    private final InputSink sink;
+    private final Listener listener;
+
+    /**
+     * How late each dispatched event fired relative to its recorded time, in nanoseconds.
+     */
+    public final LatencyHistogram moveLatency = new LatencyHistogram();
+    public final LatencyHistogram keyLatency = new LatencyHistogram();
+    public final LatencyHistogram buttonLatency = new LatencyHistogram();
+
+    private Timeline timeline;
+    private PlaybackOptions options;
+    private long[] due = new long[0]; // nanoseconds into playback of every action
+    private long[] releaseDue = new long[0]; // and of the release of every press
+    private long[] holdUntil = new long[0]; // of every move, when the cursor may leave it for the next one
+    private long length;
+    private int cursor;
+    private int lastMove; // index of the last move dispatched, -1 before the first
+    private final ReleaseQueue held = new ReleaseQueue();
+    private int mouseX, mouseY;
+
+    private volatile int iterations;
+    private int coalescedMoves;
+    private volatile long maxDrift, totalDrift;
+
+    private long startNanos;
+    private long parkOvershoot = 1_000_000L;
+    private volatile long currentTime;
+    private volatile boolean running;
+    private Thread thread;
+
+    public Player(InputSink sink, Listener listener) {
+        this.sink = sink;
+        this.listener = listener;
+    }
+
+    /**
+     * Starts playing a snapshot of the given stores, so they may keep being edited while playback runs. Events out of
+     * time order are {@link Timeline.Validation#REPAIR repaired}.
+     */
+    public void play(EventStore mousePositions, EventStore mousePresses, EventStore keyPresses) {
+        play(Timeline.compile(mousePositions, mousePresses, keyPresses, Timeline.Validation.REPAIR));
+    }
+
+    public void play(Timeline timeline) {
+        play(timeline, new PlaybackOptions());
+    }
+
+    public synchronized void play(Timeline timeline, PlaybackOptions options) {
+        options.validate();
+        stop();
+        load(timeline, options);
+        running = true;
+        thread = new Thread(this, "Playback");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Rewinds to the start of the timeline without starting the playback thread, for driving {@link #execute(long)}
+     * directly.
+     */
+    void load(Timeline timeline, PlaybackOptions options) {
+        this.timeline = timeline;
+        this.options = options;
+        schedule();
+        rewind();
+        held.clear();
+        iterations = 0;
+        maxDrift = totalDrift = 0;
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * Goes back to the first action for the next iteration. The latencies start over too, so they describe one
+     * iteration.
+     */
+    private void rewind() {
+        cursor = 0;
+        lastMove = -1;
+        coalescedMoves = 0;
+        moveLatency.reset();
+        keyLatency.reset();
+        buttonLatency.reset();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (thread != null && thread != Thread.currentThread()) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        thread = null;
+    }
+
+    public boolean isPlaying() {
+        return running;
+    }
+
+    /**
+     * Works out when every action and release is due. Gaps are measured between consecutive events of the recording,
+     * releases included, so holding a key through a pause keeps the pause from counting as idle.
+     * <p>
+     * A release that keeps its recorded duration is still kept between the events recorded before and after it, so
+     * speeding up never turns a key held before another into a chord with it, nor presses a key that is still held.
+     */
+    private void schedule() {
+        int n = timeline.size();
+        if (due.length < n) {
+            due = new long[n];
+            releaseDue = new long[n];
+            holdUntil = new long[n];
+        }
+        long last = 0, now = 0; // recorded millisecond and playback nanosecond of the last event
+        int unbounded = -1; // press whose release was placed by its recorded duration, until the event after it is placed
+        held.clear(); // releases by recorded time, carrying the index of their press
+        for (int i = 0; i <= n; i++) {
+            long time = i < n ? timeline.time(i) : Long.MAX_VALUE;
+            for (; !held.isEmpty() && held.deadline() <= time; held.pop()) {
+                long previous = now;
+                now += options.gap(held.deadline() - last);
+                last = held.deadline();
+                int press = held.code();
+                if (unbounded >= 0) releaseDue[unbounded] = Math.min(releaseDue[unbounded], now);
+                if (options.scaleDurations) releaseDue[press] = now;
+                else {
+                    releaseDue[press] = Math.max(previous, due[press] + timeline.b(press) * 1_000_000L);
+                    unbounded = press;
+                }
+            }
+            if (i == n) break;
+            now += options.gap(time - last);
+            last = time;
+            due[i] = now;
+            if (unbounded >= 0) releaseDue[unbounded] = Math.min(releaseDue[unbounded], now);
+            unbounded = -1;
+            if (timeline.type(i) != Timeline.MOVE) held.push(time + timeline.b(i), timeline.type(i), i);
+        }
+        length = n == 0 ? 0 : due[n - 1];
+        for (int i = 0; i < n; i++) if (timeline.type(i) != Timeline.MOVE) length = Math.max(length, releaseDue[i]);
+        holdForButtons();
+    }
+
+    /**
+     * Keeps the cursor on the sample recorded before each button press and release until it fires, so interpolating
+     * towards the next sample never moves a click or the end of a drag.
+     */
+    private void holdForButtons() {
+        int n = timeline.size(), lastMove = -1;
+        for (int i = 0; i < n; i++) {
+            if (timeline.type(i) == Timeline.MOVE) holdUntil[lastMove = i] = due[i];
+            else if (timeline.type(i) == Timeline.BUTTON_PRESS && lastMove >= 0)
+                holdUntil[lastMove] = Math.max(holdUntil[lastMove], due[i]);
+        }
+        for (int i = 0; i < n; i++) {
+            if (timeline.type(i) != Timeline.BUTTON_PRESS) continue;
+            int move = moveBefore(releaseDue[i]);
+            if (move >= 0) holdUntil[move] = Math.max(holdUntil[move], releaseDue[i]);
+        }
+    }
+
+    /**
+     * @return index of the last move due strictly before {@code time}, since releases go before moves due with them;
+     * -1 if there is none
+     */
+    private int moveBefore(long time) {
+        int low = 0, high = timeline.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (due[mid] < time) low = mid + 1;
+            else high = mid;
+        }
+        int move = low - 1;
+        while (move >= 0 && timeline.type(move) != Timeline.MOVE) move--;
+        return move;
+    }
+
+    /**
+     * @return how long the loaded timeline takes to play with its options, in nanoseconds
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * @return mouse samples left out this iteration because a later one was due already, see
+     * {@link PlaybackOptions#moveCatchUp}
+     */
+    public int coalescedMoves() {
+        return coalescedMoves;
+    }
+
+    /**
+     * @return number of iterations played to the end
+     */
+    public int iterations() {
+        return iterations;
+    }
+
+    /**
+     * @return the most nanoseconds an iteration took longer than {@link #length()}
+     */
+    public long maxDrift() {
+        return maxDrift;
+    }
+
+    public long meanDrift() {
+        return iterations == 0 ? 0 : totalDrift / iterations;
+    }
+
+    /**
+     * @return playback position in milliseconds of the recording
+     */
+    public long currentTime() {
+        return currentTime;
+    }
+
+    @Override
+    public void run() {
+        try {
+            startNanos = System.nanoTime();
+            long lastProgress = startNanos;
+            for (int iteration = 1; running; iteration++) {
+                if (iteration > 1) { // timed from when it was due, so a late wake-up shows as latency rather than drift
+                    waitUntil(startNanos);
+                    rewind();
+                }
+                while (running) {
+                    long now = System.nanoTime();
+                    long next = execute(now - startNanos);
+                    currentTime = recordedTime(now - startNanos);
+                    if (now - lastProgress >= PROGRESS_INTERVAL) {
+                        lastProgress = now;
+                        listener.progress(currentTime);
+                    }
+                    if (next < 0) {
+                        long end = System.nanoTime(), duration = end - startNanos, drift = duration - length;
+                        maxDrift = Math.max(maxDrift, drift);
+                        totalDrift += drift;
+                        iterations = iteration;
+                        listener.iterationFinished(iteration, duration, drift);
+                        if (iteration == options.iterations) running = false;
+                        startNanos = end + options.iterationGap * 1_000_000L;
+                        break;
+                    }
+                    waitUntil(Math.min(startNanos + next, lastProgress + PROGRESS_INTERVAL));
+                }
+            }
+        } finally { // stopped early or failed, let go of everything still held
+            for (; !held.isEmpty(); held.pop())
+                try {
+                    if (held.type() == Timeline.KEY_PRESS) sink.keyRelease(held.code());
+                    else sink.mouseRelease(held.code());
+                } catch (RuntimeException e) {
+                    e.printStackTrace(); // keep releasing the rest
+                }
+            sink.flush();
+            running = false;
+            listener.finished();
+        }
+    }
+
+    /**
+     * Dispatches every action due at {@code elapsed} nanoseconds into playback.
+     *
+     * @return nanoseconds into playback at which the next action is due, or -1 when nothing is left
+     */
+    long execute(long elapsed) {
+        boolean skipped = false; // whether the last move handled was coalesced instead of injected
+        while (true) {
+            long action = cursor < timeline.size() ? due[cursor] : Long.MAX_VALUE;
+            if (held.deadline() <= elapsed && held.deadline() <= action) { // releases due at the same time go first
+                release();
+                held.pop();
+                continue;
+            }
+            if (action > elapsed) break;
+            int code = timeline.a(cursor);
+            switch (timeline.type(cursor)) {
+                case Timeline.MOVE:
+                    lastMove = cursor;
+                    if (skipped = coalesce(elapsed, skipped)) {
+                        coalescedMoves++;
+                        break;
+                    }
+                    moveLatency.record(lateness(action));
+                    sink.mouseMove(mouseX = code, mouseY = timeline.b(cursor));
+                    break;
+                case Timeline.KEY_PRESS:
+                    keyLatency.record(lateness(action));
+                    sink.keyPress(code);
+                    held.push(releaseDue[cursor], Timeline.KEY_PRESS, code);
+                    break;
+                case Timeline.BUTTON_PRESS:
+                    buttonLatency.record(lateness(action));
+                    sink.mousePress(code);
+                    held.push(releaseDue[cursor], Timeline.BUTTON_PRESS, code);
+                    break;
+            }
+            cursor++;
+        }
+        boolean moving = interpolate(elapsed, skipped);
+        sink.flush();
+        if (cursor == timeline.size() && held.isEmpty()) return -1;
+        long next = Math.min(cursor < timeline.size() ? due[cursor] : Long.MAX_VALUE, held.deadline());
+        return moving ? Math.min(next, elapsed + INTERPOLATION_STEP) : next;
+    }
+
+    /**
+     * Decides whether the move at the cursor, which is due, can be left out because the cursor is going on to the
+     * next one anyway. Only a move followed directly by another is left out, and not if a release falls between the
+     * two, so every press and release still happens where it was recorded.
+     *
+     * @param catchingUp whether the move before was left out
+     */
+    private boolean coalesce(long elapsed, boolean catchingUp) {
+        if (options.moveCatchUp == PlaybackOptions.MoveCatchUp.ALL) return false;
+        int next = cursor + 1;
+        if (next == timeline.size() || timeline.type(next) != Timeline.MOVE || held.deadline() <= due[next]) return false;
+        return due[next] <= elapsed || catchingUp && options.moveCatchUp == PlaybackOptions.MoveCatchUp.INTERPOLATE;
+    }
+
+    /**
+     * Releases the input at the top of {@link #held}.
+     */
+    private void release() {
+        if (held.type() == Timeline.KEY_PRESS) {
+            keyLatency.record(lateness(held.deadline()));
+            sink.keyRelease(held.code());
+        } else {
+            buttonLatency.record(lateness(held.deadline()));
+            sink.mouseRelease(held.code());
+        }
+    }
+
+    /**
+     * Moves the cursor to where it is {@code elapsed} nanoseconds into playback on the line between the last mouse
+     * sample and the next one, if they are far enough apart in time, or always when catching up on coalesced moves.
+     * A button press or release between the two samples holds the cursor on the first one until it has fired, then
+     * it travels the rest of the line in the time left.
+     *
+     * @return whether the cursor is still on its way to the next sample
+     */
+    private boolean interpolate(long elapsed, boolean catchingUp) {
+        int nextMove = timeline.nextMove(cursor);
+        if (lastMove < 0 || nextMove == timeline.size()) return false;
+        long from = holdUntil[lastMove], to = due[nextMove];
+        int x0 = timeline.a(lastMove), y0 = timeline.b(lastMove), x1 = timeline.a(nextMove), y1 = timeline.b(nextMove);
+        boolean moving = to - from > INTERPOLATION_STEP && (x0 != x1 || y0 != y1);
+        if (!moving && !catchingUp) return false;
+        double t = to <= from ? 0 : Math.min(1, Math.max(0, (elapsed - from) / (double) (to - from)));
+        int x = (int) Math.round(x0 + (x1 - x0) * t), y = (int) Math.round(y0 + (y1 - y0) * t);
+        if (x != mouseX || y != mouseY) sink.mouseMove(mouseX = x, mouseY = y);
+        return moving;
+    }
+
+    /**
+     * @return where in the recording playback is {@code elapsed} nanoseconds in, in milliseconds
+     */
+    private long recordedTime(long elapsed) {
+        if (cursor == 0) return 0;
+        long time = timeline.time(cursor - 1) + (long) ((elapsed - due[cursor - 1]) / 1e6 * options.speed);
+        return Math.min(time, cursor < timeline.size() ? timeline.time(cursor) : timeline.length());
+    }
+
+    /**
+     * @param due nanoseconds into playback
+     */
+    private long lateness(long due) {
+        return System.nanoTime() - startNanos - due;
+    }
+
+    public void dumpLatency(File file) throws IOException {
+        try (PrintWriter out = new PrintWriter(new FileWriter(file))) {
+            printLatency(out);
+        }
+    }
+
+    public void printLatency(PrintWriter out) {
+        moveLatency.print("mouse move", out);
+        keyLatency.print("key", out);
+        buttonLatency.print("button", out);
+        out.flush();
+    }
+
+    private void waitUntil(long deadline) {
+        while (running) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) return;
+            long spin = Math.max(MIN_SPIN, Math.min(MAX_SPIN, parkOvershoot * 2));
+            if (remaining > spin) {
+                long wake = deadline - spin;
+                LockSupport.parkNanos(wake - System.nanoTime());
+                long late = System.nanoTime() - wake;
+                if (late > 0) parkOvershoot += (late - parkOvershoot) / 8;
+            } else Thread.yield();
+        }
+    }
+}
@@ -1,11 +1,10 @@
 package controllers;
 
 
-import com.google.gson.Gson;
-import com.google.gson.stream.JsonReader;
 import com.sun.glass.events.MouseEvent;
 import display.Editor;
 import display.Settings;
+import display.Strings;
 import org.jnativehook.GlobalScreen;
 import org.jnativehook.NativeHookException;
 import org.jnativehook.keyboard.NativeKeyEvent;
@@ -14,59 +13,89 @@ import org.jnativehook.mouse.NativeMouseEvent;
 import org.jnativehook.mouse.NativeMouseListener;
 import org.jnativehook.mouse.NativeMouseMotionListener;
 
-import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.InputEvent;
 import java.awt.event.KeyEvent;
 import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Optional;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 
 public class Recorder implements NativeKeyListener, NativeMouseListener, NativeMouseMotionListener {
 
     private final Robot robot;
     private final Timer timer;
-    public final ArrayList<MousePos> mousePositions;
-    public final ArrayList<Press> mousePresses;
-    public final ArrayList<Press> keyPresses;
+    public final EventStore mousePositions;
+    public final TimeIndex positionIndex;
+    public final PathPyramid positionPyramid;
+    public final EventStore mousePresses;
+    public final EventStore keyPresses;
+    public final IntervalIndex buttonIndex;
+    public final IntervalIndex keyIndex;
     public final ArrayList<ScreenState> screenStates;
 
-    private final ArrayList<Press> activeKeys;
-    private final ArrayList<Press> activeButtons;
+    private final Player player;
+    private final Runnable playbackCallback;
 
-    private long startTime;
+    private final EventRing events;
+    private final Ingest ingest;
 
-    private int mouseIndex;
-    private int mousePressIndex;
-    private int keyIndex;
+    private volatile long startTime;
 
-    public long currentTime;
+    public volatile long currentTime;
     private final Editor editor;
 
     public enum RecorderState {IDLE, RECORDING, PLAYING}
 
-    private RecorderState state = RecorderState.IDLE;
+    private volatile RecorderState state = RecorderState.IDLE;
+
+    /**
+     * Milliseconds between screen captures while recording.
+     */
+    public static final long CAPTURE_PERIOD = 40;
+    private static final int CAPTURE_QUEUE = 4;
 
-    private int frameCounter = 0;
     private Rectangle capture;
+    private CapturePipeline capturePipeline;
+    private int captureGeneration;
+    private long droppedBefore, overflowsBefore; // ring counters when this recording started, they count since launch
+    private FrameArchive frames;
+    private Loader loader;
 
     public Recorder(Editor editor) throws AWTException {
         this.editor = editor;
-        mousePositions = new ArrayList<>();
-        keyPresses = new ArrayList<>();
-        mousePresses = new ArrayList<>();
+        mousePositions = new EventStore(EventStore.Kind.MOVE);
+        positionIndex = new TimeIndex(mousePositions);
+        positionPyramid = new PathPyramid(mousePositions, positionIndex);
+        keyPresses = new EventStore(EventStore.Kind.PRESS);
+        mousePresses = new EventStore(EventStore.Kind.PRESS);
+        keyIndex = new IntervalIndex(keyPresses);
+        buttonIndex = new IntervalIndex(mousePresses);
         screenStates = new ArrayList<>();
+        events = new EventRing(1 << 16);
 
-        activeKeys = new ArrayList<>();
-        activeButtons = new ArrayList<>();
+        ingest = new Ingest(mousePositions, mousePresses, keyPresses, Settings.PATH_TOLERANCE, Settings.PATH_TIME_TOLERANCE);
 
         timer = new Timer(8, e -> update());
         robot = new Robot();
+        playbackCallback = editor::playbackCallback;
+        player = new Player(new RobotSink(robot), new Player.Listener() {
+            public void progress(long time) {
+                currentTime = time;
+                SwingUtilities.invokeLater(playbackCallback);
+            }
+
+            public void finished() {
+                currentTime = player.currentTime();
+                state = RecorderState.IDLE;
+                SwingUtilities.invokeLater(playbackCallback);
+            }
+        });
         try {
             GlobalScreen.registerNativeHook();
         } catch (NativeHookException ex) {
@@ -82,29 +111,45 @@ public class Recorder implements NativeKeyListener, NativeMouseListener, NativeM
 
     public void record() {
         if (state != RecorderState.IDLE) return;
+        if (loader != null) loader.cancel(false);
         Dimension screenSize = Toolkit.getDefaultToolkit().getScreenSize();
         capture = new Rectangle(0, 0, screenSize.width, screenSize.height);
-        state = RecorderState.RECORDING;
-        mouseIndex = 0;
-        mousePressIndex = 0;
-        keyIndex = 0;
-        startTime = System.currentTimeMillis();
         mousePositions.clear();
         keyPresses.clear();
         mousePresses.clear();
+        editor.clearSelection(); // selection is by index, it would land on the new events
+        ingest.reset(Settings.PATH_TOLERANCE, Settings.PATH_TIME_TOLERANCE);
+        events.clear(); // events that raced the last stop
+        droppedBefore = events.dropped();
+        overflowsBefore = events.overflows();
+        screenStates.clear();
+        int generation = ++captureGeneration;
+        if (frames != null) frames.delete();
+        try {
+            frames = new FrameArchive(new File("./cache/screens.qmf"));
+        } catch (IOException e) {
+            e.printStackTrace();
+            frames = null;
+        }
+        FrameArchive archive = frames;
+        capturePipeline = new CapturePipeline(robot, capture, CAPTURE_PERIOD, CAPTURE_QUEUE, Settings.captureBackpressure(),
+                (time, image) -> {
+                    int frame = archive == null ? -1 : archive.append(time, image);
+                    return frame < 0 ? null : new ScreenState(time, archive, frame);
+                },
+                screenState -> SwingUtilities.invokeLater(() -> {
+                    if (generation == captureGeneration) screenStates.add(screenState);
+                }));
+        startTime = System.currentTimeMillis();
+        state = RecorderState.RECORDING;
+        capturePipeline.start(startTime);
         timer.start();
     }
 
     private void update() {
         currentTime = System.currentTimeMillis() - startTime;
-        if (state == RecorderState.PLAYING) {
-            execute();
-            editor.playbackCallback();
-        }
         if (state == RecorderState.RECORDING) {
-            if (frameCounter % 5 == 0)
-                screenStates.add(new ScreenState(currentTime, resize(robot.createScreenCapture(capture))));
-            frameCounter++;
+            events.drain(ingest);
         }
     }
 
@@ -117,74 +162,62 @@ public class Recorder implements NativeKeyListener, NativeMouseListener, NativeM
         return dimg;
     }
 
-    public void execute() {
-        while (true) { // purely mouse genius
-            if (mouseIndex >= mousePositions.size() && keyIndex >= keyPresses.size() && mousePressIndex >= mousePresses.size() && activeKeys.size() == 0 && activeButtons.size() == 0) { // run out of stuff
-                state = RecorderState.IDLE;
-                break;
-            }
-            boolean stop = true;
-            if (mouseIndex < mousePositions.size()) {
-                MousePos mousePos = mousePositions.get(mouseIndex);
-                if (mousePos.time < currentTime) {
-                    robot.mouseMove(mousePos.x, mousePos.y);
-                    mouseIndex++;
-                    stop = false;
-                }
-            }
-
-            if (keyIndex < keyPresses.size()) {
-                Press press = keyPresses.get(keyIndex);
-                if (press.time < currentTime) {
-                    robot.keyPress(press.code);
-                    activeKeys.add(press);
-                    keyIndex++;
-                    stop = false;
-                }
-            }
-            for (int i = activeKeys.size() - 1; i >= 0; i--) {
-                Press press = activeKeys.get(i);
-                if (press.time + press.duration < currentTime) {
-                    robot.keyRelease(press.code);
-                    activeKeys.remove(i);
-                }
-            }
-
-            if (mousePressIndex < mousePresses.size()) {
-                Press press = mousePresses.get(mousePressIndex);
-                if (press.time < currentTime) {
-                    robot.mousePress(press.code);
-                    activeButtons.add(press);
-                    mousePressIndex++;
-                    stop = false;
-                }
-            }
-            for (int i = activeButtons.size() - 1; i >= 0; i--) {
-                Press press = activeButtons.get(i);
-                if (press.time + press.duration < currentTime) {
-                    robot.mouseRelease(press.code);
-                    activeButtons.remove(i);
-                }
-            }
-            if (stop) break;
-        }
-    }
-
     public void playBack() {
         if (state != RecorderState.IDLE) return;
+        Timeline timeline = Timeline.compile(mousePositions, mousePresses, keyPresses, Timeline.Validation.REPAIR);
+        if (timeline.repairs > 0)
+            System.err.println("Repaired " + timeline.repairs + " events out of time order or overlapping for playback");
         state = RecorderState.PLAYING;
-        mouseIndex = 0;
-        mousePressIndex = 0;
-        keyIndex = 0;
-        startTime = System.currentTimeMillis();
-        timer.start();
-        activeKeys.clear();
-        activeButtons.clear();
+        player.play(timeline, Settings.playbackOptions());
     }
 
     public void stop() {
+        boolean recording = state == RecorderState.RECORDING;
+        player.stop();
         state = RecorderState.IDLE;
         timer.stop();
+        if (recording) {
+            capturePipeline.stop();
+            events.drain(ingest);
+            ingest.pathSimplifier.flush();
+            long dropped = events.dropped() - droppedBefore;
+            if (dropped > 0)
+                System.err.println("Dropped " + dropped + " input events in " + (events.overflows() - overflowsBefore) + " overflows");
+            if (ingest.unmatchedReleases() > 0)
+                System.err.println("Ignored " + ingest.unmatchedReleases() + " releases of keys pressed before recording");
+        }
+    }
+
+    public Player player() {
+        return player;
+    }
+
+    public void saveLatencyReport() {
+        JFileChooser fileChooser = new JFileChooser();
+        int result = fileChooser.showSaveDialog(null);
+        if (result == JFileChooser.APPROVE_OPTION) {
+            try {
+                player.dumpLatency(fileChooser.getSelectedFile());
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * @return how the last recording's screen capture and mouse path simplification went, a line each, or null before
+     * the first recording
+     */
+    public String statistics() {
+        return capturePipeline == null ? null : capturePipeline + "\n" + ingest.pathSimplifier;
+    }
+
+    public CapturePipeline capturePipeline() {
+        return capturePipeline;
+    }
+
+    public EventRing events() {
+        return events;
     }
 
     public void exit() {
@@ -196,56 +229,43 @@ public class Recorder implements NativeKeyListener, NativeMouseListener, NativeM
     }
 
     public void nativeMouseDragged(NativeMouseEvent nativeMouseEvent) {
-        if (state == RecorderState.RECORDING) {
-            currentTime = System.currentTimeMillis() - startTime;
-            mousePositions.add(new MousePos(nativeMouseEvent.getPoint(), currentTime));
-        }
+        if (state == RecorderState.RECORDING)
+            events.offer(EventRing.MOUSE_DRAG, System.currentTimeMillis() - startTime, nativeMouseEvent.getX(), nativeMouseEvent.getY());
     }
 
     public void nativeMouseMoved(NativeMouseEvent nativeMouseEvent) {
-        if (state == RecorderState.RECORDING && (mousePositions.size() == 0 || mousePositions.get(mousePositions.size() - 1).dist2(nativeMouseEvent.getPoint()) > 2)) {
-            currentTime = System.currentTimeMillis() - startTime;
-            mousePositions.add(new MousePos(nativeMouseEvent.getPoint(), currentTime));
-        }
+        if (state == RecorderState.RECORDING)
+            events.offer(EventRing.MOUSE_MOVE, System.currentTimeMillis() - startTime, nativeMouseEvent.getX(), nativeMouseEvent.getY());
     }
 
     public void nativeKeyPressed(NativeKeyEvent nativeKeyEvent) {
-        if (state == RecorderState.RECORDING) {
-            currentTime = System.currentTimeMillis() - startTime;
-            keyPresses.add(new Press(translateKey(nativeKeyEvent.getKeyCode()), currentTime));
-        }
-        if (Settings.PLAY_KEY.accepts(nativeKeyEvent) && mousePositions.size() > 0) playBack();
-        else if (Settings.RECORD_KEY.accepts(nativeKeyEvent)) record();
-
-        if (Settings.STOP_KEY.accepts(nativeKeyEvent)) {
-            stop();
-            editor.update();
-        }
+        if (state == RecorderState.RECORDING)
+            events.offer(EventRing.KEY_PRESS, System.currentTimeMillis() - startTime, nativeKeyEvent.getKeyCode(), 0);
+        int hotkeys = Settings.hotkeys(translateKey(nativeKeyEvent.getKeyCode()), translateModifier(nativeKeyEvent.getModifiers()));
+        if (hotkeys != 0) SwingUtilities.invokeLater(() -> {
+            if ((hotkeys & Settings.PLAY) != 0 && mousePositions.size() > 0) playBack();
+            else if ((hotkeys & Settings.RECORD) != 0) record();
+
+            if ((hotkeys & Settings.STOP) != 0) {
+                stop();
+                editor.update();
+            }
+        });
     }
 
     public void nativeKeyReleased(NativeKeyEvent nativeKeyEvent) {
-        if (state == RecorderState.RECORDING) {
-            currentTime = System.currentTimeMillis() - startTime;
-            int key = translateKey(nativeKeyEvent.getKeyCode());
-            Optional<Press> reduce = keyPresses.stream().filter(p -> p.code == key).reduce((first, second) -> second);
-            reduce.ifPresent(press -> press.duration = (int) (currentTime - press.time));
-        }
+        if (state == RecorderState.RECORDING)
+            events.offer(EventRing.KEY_RELEASE, System.currentTimeMillis() - startTime, nativeKeyEvent.getKeyCode(), 0);
     }
 
     public void nativeMousePressed(NativeMouseEvent nativeMouseEvent) {
-        if (state == RecorderState.RECORDING) {
-            currentTime = System.currentTimeMillis() - startTime;
-            mousePresses.add(new Press(translateButton(nativeMouseEvent.getButton()), currentTime));
-        }
+        if (state == RecorderState.RECORDING)
+            events.offer(EventRing.BUTTON_PRESS, System.currentTimeMillis() - startTime, nativeMouseEvent.getButton(), 0);
     }
 
     public void nativeMouseReleased(NativeMouseEvent nativeMouseEvent) {
-        if (state == RecorderState.RECORDING) {
-            currentTime = System.currentTimeMillis() - startTime;
-            int button = translateButton(nativeMouseEvent.getButton());
-            Optional<Press> reduce = mousePresses.stream().filter(p -> p.code == button).reduce((first, second) -> second);
-            reduce.ifPresent(press -> press.duration = (int) (currentTime - press.time));
-        }
+        if (state == RecorderState.RECORDING)
+            events.offer(EventRing.BUTTON_RELEASE, System.currentTimeMillis() - startTime, nativeMouseEvent.getButton(), 0);
     }
 
     public static class TimedObject {
@@ -254,60 +274,27 @@ public class Recorder implements NativeKeyListener, NativeMouseListener, NativeM
 
     public static class ScreenState extends TimedObject {
         public long time;
+        public final FrameArchive archive;
+        public final int frame;
 
-        public ScreenState(long time, BufferedImage state) {
+        public ScreenState(long time, FrameArchive archive, int frame) {
             this.time = time;
-            try {
-                ImageIO.write(state, "png", new File("./cache/" + time + ".png"));
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+            this.archive = archive;
+            this.frame = frame;
         }
 
         public BufferedImage getImage() {
-            try {
-                return ImageIO.read(new File("./cache/" + time + ".png"));
-            } catch (IOException e) {
-                return null;
-            }
-        }
-    }
-
-    public static class MousePos extends TimedObject {
-        public int x, y;
-
-        public MousePos(Point point, long time) {
-            this.x = point.x;
-            this.y = point.y;
-            this.time = time;
-        }
-
-        public int dist2(Point other) {
-            return (other.x - x) * (other.x - x) + (other.y - y) * (other.y - y);
-        }
-    }
-
-    public static class Press extends TimedObject {
-        public int code;
-        public int duration;
-
-        public Press(int code, long start) {
-            this.code = code;
-            this.time = start;
+            return archive.decode(frame);
         }
     }
 
     public void saveToFile() {
-        Gson gson = new Gson();
         JFileChooser fileChooser = new JFileChooser();
         int result = fileChooser.showSaveDialog(null);
         if (result == JFileChooser.APPROVE_OPTION) {
             File file = fileChooser.getSelectedFile();
             try {
-                RecordedData object = new RecordedData(mousePositions, mousePresses, keyPresses);
-                FileWriter writer = new FileWriter(file);
-                gson.toJson(object, RecordedData.class, writer);
-                writer.flush();
+                RecordingIO.save(file, mousePositions, mousePresses, keyPresses);
             } catch (IOException e) {
                 e.printStackTrace();
             }
@@ -323,33 +310,78 @@ public class Recorder implements NativeKeyListener, NativeMouseListener, NativeM
         }
     }
 
-    private static class RecordedData {
-        public ArrayList<MousePos> mousePositions;
-        public ArrayList<Press> mousePresses;
-        public ArrayList<Press> keyPresses;
+    /**
+     * Streams the recording in on a background thread. Events show up in the editor chunk by chunk, and the part
+     * loaded so far can be played or edited before the rest arrives.
+     */
+    public void openFromFile(File file) {
+        if (loader != null) loader.cancel(false);
+        mousePositions.clear();
+        mousePresses.clear();
+        keyPresses.clear();
+        editor.clearSelection();
+        loader = new Loader(file);
+        loader.execute();
+    }
 
-        public RecordedData() {
-        }
+    private static class Chunk {
+        final int section;
+        final EventStore events;
 
-        public RecordedData(ArrayList<MousePos> mousePositions, ArrayList<Press> mousePresses, ArrayList<Press> keyPresses) {
-            this.mousePositions = mousePositions;
-            this.mousePresses = mousePresses;
-            this.keyPresses = keyPresses;
+        Chunk(int section, EventStore events) {
+            this.section = section;
+            this.events = events;
         }
     }
 
-    public void openFromFile(File file) {
-        Gson gson = new Gson();
-        try {
-            RecordedData object = gson.fromJson(new JsonReader(new FileReader(file)), RecordedData.class);
-            this.mousePositions.clear();
-            this.mousePresses.clear();
-            this.keyPresses.clear();
-            this.mousePositions.addAll(object.mousePositions);
-            this.mousePresses.addAll(object.mousePresses);
-            this.keyPresses.addAll(object.keyPresses);
-        } catch (IOException e) {
-            e.printStackTrace();
+    private class Loader extends SwingWorker<Boolean, Chunk> implements RecordingIO.Sink {
+        private final File file;
+        private final ProgressMonitor monitor;
+
+        Loader(File file) {
+            this.file = file;
+            monitor = new ProgressMonitor(editor, Strings.get().LOADING, file.getName(), 0, 100);
+            addPropertyChangeListener(e -> {
+                if ("progress".equals(e.getPropertyName())) monitor.setProgress((Integer) e.getNewValue());
+                if (monitor.isCanceled()) cancel(false);
+            });
+        }
+
+        @Override
+        protected Boolean doInBackground() throws IOException {
+            return RecordingIO.stream(file, this);
+        }
+
+        public void append(int section, EventStore chunk) {
+            publish(new Chunk(section, chunk));
+        }
+
+        public void progress(long bytesRead, long totalBytes) {
+            setProgress((int) Math.min(99, bytesRead * 100 / Math.max(1, totalBytes)));
+        }
+
+        @Override
+        protected void process(List<Chunk> chunks) {
+            if (isCancelled()) return; // superseded, or the user kept what was loaded so far
+            for (Chunk chunk : chunks) {
+                if (chunk.section == RecordingIO.MOUSE_POSITIONS) mousePositions.addAll(chunk.events);
+                else if (chunk.section == RecordingIO.MOUSE_PRESSES) mousePresses.addAll(chunk.events);
+                else keyPresses.addAll(chunk.events);
+            }
+            editor.update();
+        }
+
+        @Override
+        protected void done() {
+            monitor.close();
+            if (loader == this) loader = null;
+            try {
+                get();
+            } catch (CancellationException ignored) {
+            } catch (InterruptedException | ExecutionException e) {
+                e.printStackTrace();
+            }
+            editor.update();
         }
     }
 
@@ -359,7 +391,35 @@ public class Recorder implements NativeKeyListener, NativeMouseListener, NativeM
     public void nativeMouseClicked(NativeMouseEvent nativeMouseEvent) {
     }
 
-    public static int translateKey(int oldCode) {
+    /**
+     * Native key codes are scan codes on one of a few 256-code pages, so the translation is two array reads: the
+     * page's slot, then the AWT code in it. Both tables are filled from {@link #mapKey(int)} once.
+     */
+    private static final byte[] KEY_PAGES = new byte[256];
+    private static final int[] KEY_CODES;
+    private static final int[] BUTTON_CODES = new int[NativeMouseEvent.BUTTON5 + 1];
+
+    static {
+        int[] pages = {0x00, 0x0E, 0xE0, 0xFF};
+        Arrays.fill(KEY_PAGES, (byte) -1);
+        KEY_CODES = new int[pages.length << 8];
+        for (int page = 0; page < pages.length; page++) {
+            KEY_PAGES[pages[page]] = (byte) page;
+            for (int code = 0; code < 256; code++) KEY_CODES[page << 8 | code] = mapKey(pages[page] << 8 | code);
+        }
+        for (int button = 0; button < BUTTON_CODES.length; button++) BUTTON_CODES[button] = mapButton(button);
+    }
+
+    public static int translateKey(int nativeCode) {
+        int page = nativeCode >>> 8 < KEY_PAGES.length ? KEY_PAGES[nativeCode >>> 8] : -1;
+        return page < 0 ? KeyEvent.VK_UNDEFINED : KEY_CODES[page << 8 | nativeCode & 0xFF];
+    }
+
+    public static int translateButton(int nativeButton) {
+        return nativeButton >= 0 && nativeButton < BUTTON_CODES.length ? BUTTON_CODES[nativeButton] : MouseEvent.BUTTON_NONE;
+    }
+
+    private static int mapKey(int oldCode) {
         int keyCode = KeyEvent.VK_UNDEFINED;
         switch (oldCode) {
             case NativeKeyEvent.VC_ESCAPE:
@@ -867,7 +927,7 @@ public class Recorder implements NativeKeyListener, NativeMouseListener, NativeM
         return result;
     }
 
-    public static int translateButton(int oldCode) {
+    private static int mapButton(int oldCode) {
         int code = MouseEvent.BUTTON_NONE;
         switch (oldCode) {
             case NativeMouseEvent.BUTTON1:
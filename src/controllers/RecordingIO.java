@@ -0,0 +1,376 @@
+package controllers;
+
+import com.google.gson.Gson;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Saves and loads recordings, either as the original Gson JSON or as a compact binary format.
+ * <p>
+ * The binary format is the magic {@code QMRC}, a version byte, then the mouse positions, mouse presses and key
+ * presses, each as a varint count followed by its events. Every field is stored as a zig-zag varint delta from the
+ * previous event of the same store (times, x, y) or as a plain varint (codes, durations), so a typical mouse sample
+ * takes 3-4 bytes instead of ~35 characters of JSON.
+ * <p>
+ * Files are saved as binary when their name ends in {@link #BINARY_EXTENSION}; loading looks at the magic, so JSON
+ * recordings keep opening whatever they are called.
+ * <p>
+ * Both formats are read incrementally by {@link #stream(File, Sink)}, which hands events over in chunks as they are
+ * parsed instead of building the whole recording first.
+ */
+public class RecordingIO {
+    public static final String BINARY_EXTENSION = ".qmr";
+    public static final int MOUSE_POSITIONS = 0;
+    public static final int MOUSE_PRESSES = 1;
+    public static final int KEY_PRESSES = 2;
+    public static final int CHUNK_SIZE = 1 << 16;
+    private static final byte[] MAGIC = {'Q', 'M', 'R', 'C'};
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    public interface Sink {
+        /**
+         * @param section one of {@link #MOUSE_POSITIONS}, {@link #MOUSE_PRESSES} or {@link #KEY_PRESSES}
+         * @param chunk   freshly allocated, ownership passes to the sink
+         */
+        void append(int section, EventStore chunk);
+
+        void progress(long bytesRead, long totalBytes);
+
+        boolean isCancelled();
+    }
+
+    private static class RecordedData {
+        @JsonAdapter(EventStore.MoveAdapter.class)
+        public EventStore mousePositions;
+        @JsonAdapter(EventStore.PressAdapter.class)
+        public EventStore mousePresses;
+        @JsonAdapter(EventStore.PressAdapter.class)
+        public EventStore keyPresses;
+
+        public RecordedData() {
+        }
+
+        public RecordedData(EventStore mousePositions, EventStore mousePresses, EventStore keyPresses) {
+            this.mousePositions = mousePositions;
+            this.mousePresses = mousePresses;
+            this.keyPresses = keyPresses;
+        }
+    }
+
+    public static void save(File file, EventStore mousePositions, EventStore mousePresses, EventStore keyPresses) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            if (file.getName().toLowerCase().endsWith(BINARY_EXTENSION))
+                writeBinary(out, mousePositions, mousePresses, keyPresses);
+            else writeJson(out, mousePositions, mousePresses, keyPresses);
+        }
+    }
+
+    /**
+     * Replaces the contents of the given stores with the recording in the file. The stores are left untouched if
+     * the file cannot be read.
+     */
+    public static void load(File file, EventStore mousePositions, EventStore mousePresses, EventStore keyPresses) throws IOException {
+        EventStore newPositions = new EventStore(EventStore.Kind.MOVE);
+        EventStore newMousePresses = new EventStore(EventStore.Kind.PRESS);
+        EventStore newKeyPresses = new EventStore(EventStore.Kind.PRESS);
+        EventStore[] sections = {newPositions, newMousePresses, newKeyPresses};
+        stream(file, new Sink() {
+            public void append(int section, EventStore chunk) {
+                sections[section].addAll(chunk);
+            }
+
+            public void progress(long bytesRead, long totalBytes) {
+            }
+
+            public boolean isCancelled() {
+                return false;
+            }
+        });
+        mousePositions.clear();
+        mousePresses.clear();
+        keyPresses.clear();
+        mousePositions.addAll(newPositions);
+        mousePresses.addAll(newMousePresses);
+        keyPresses.addAll(newKeyPresses);
+    }
+
+    /**
+     * Parses the file and hands its events to the sink in chunks of up to {@link #CHUNK_SIZE}, in file order.
+     *
+     * @return false if the sink cancelled before the end of the file
+     */
+    public static boolean stream(File file, Sink sink) throws IOException {
+        try (CountingInputStream counter = new CountingInputStream(new FileInputStream(file));
+             InputStream in = new BufferedInputStream(counter, BUFFER_SIZE)) {
+            Progress progress = new Progress(sink, counter, file.length());
+            if (isBinary(in)) return readBinary(in, progress);
+            else return readJson(in, progress);
+        }
+    }
+
+    /**
+     * @param in must support mark/reset, it is left at the start of the stream
+     */
+    public static boolean isBinary(InputStream in) throws IOException {
+        in.mark(MAGIC.length);
+        try {
+            for (byte b : MAGIC) if (in.read() != (b & 0xff)) return false;
+            return true;
+        } finally {
+            in.reset();
+        }
+    }
+
+    public static void writeJson(OutputStream out, EventStore mousePositions, EventStore mousePresses, EventStore keyPresses) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        new Gson().toJson(new RecordedData(mousePositions, mousePresses, keyPresses), RecordedData.class, writer);
+        writer.flush();
+    }
+
+    private static boolean readJson(InputStream stream, Progress progress) throws IOException {
+        JsonReader in = new JsonReader(new InputStreamReader(stream, StandardCharsets.UTF_8));
+        in.beginObject();
+        while (in.hasNext()) {
+            int section;
+            EventStore.Kind kind;
+            switch (in.nextName()) {
+                case "mousePositions":
+                    section = MOUSE_POSITIONS;
+                    kind = EventStore.Kind.MOVE;
+                    break;
+                case "mousePresses":
+                    section = MOUSE_PRESSES;
+                    kind = EventStore.Kind.PRESS;
+                    break;
+                case "keyPresses":
+                    section = KEY_PRESSES;
+                    kind = EventStore.Kind.PRESS;
+                    break;
+                default:
+                    in.skipValue();
+                    continue;
+            }
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+            in.beginArray();
+            EventStore chunk = new EventStore(kind, CHUNK_SIZE);
+            while (in.hasNext()) {
+                EventStore.Adapter.readEvent(in, chunk);
+                if (chunk.size() == CHUNK_SIZE) {
+                    if (!progress.append(section, chunk)) return false;
+                    chunk = new EventStore(kind, CHUNK_SIZE);
+                }
+            }
+            in.endArray();
+            if (!progress.append(section, chunk)) return false;
+        }
+        in.endObject();
+        return true;
+    }
+
+    public static void writeBinary(OutputStream stream, EventStore mousePositions, EventStore mousePresses, EventStore keyPresses) throws IOException {
+        VarintOutput out = new VarintOutput(stream);
+        out.write(MAGIC);
+        out.write(VERSION);
+        out.writeVarint(mousePositions.size());
+        long time = 0;
+        int x = 0, y = 0;
+        for (int i = 0; i < mousePositions.size(); i++) {
+            out.writeSigned(mousePositions.time(i) - time);
+            out.writeSigned(mousePositions.x(i) - x);
+            out.writeSigned(mousePositions.y(i) - y);
+            time = mousePositions.time(i);
+            x = mousePositions.x(i);
+            y = mousePositions.y(i);
+        }
+        writePresses(out, mousePresses);
+        writePresses(out, keyPresses);
+        out.flush();
+    }
+
+    private static void writePresses(VarintOutput out, EventStore presses) throws IOException {
+        out.writeVarint(presses.size());
+        long time = 0;
+        for (int i = 0; i < presses.size(); i++) {
+            out.writeSigned(presses.time(i) - time);
+            out.writeVarint(presses.code(i));
+            out.writeSigned(presses.duration(i));
+            time = presses.time(i);
+        }
+    }
+
+    private static boolean readBinary(InputStream stream, Progress progress) throws IOException {
+        VarintInput in = new VarintInput(stream);
+        for (byte b : MAGIC) if (in.read() != (b & 0xff)) throw new IOException("Not a recording");
+        int version = in.read();
+        if (version != VERSION) throw new IOException("Unsupported recording version " + version);
+        int count = (int) in.readVarint();
+        long time = 0;
+        int x = 0, y = 0;
+        EventStore chunk = new EventStore(EventStore.Kind.MOVE, Math.min(count, CHUNK_SIZE));
+        for (int i = 0; i < count; i++) {
+            time += in.readSigned();
+            x += in.readSigned();
+            y += in.readSigned();
+            chunk.addMove(time, x, y);
+            if (chunk.size() == CHUNK_SIZE) {
+                if (!progress.append(MOUSE_POSITIONS, chunk)) return false;
+                chunk = new EventStore(EventStore.Kind.MOVE, Math.min(count - i - 1, CHUNK_SIZE));
+            }
+        }
+        if (!progress.append(MOUSE_POSITIONS, chunk)) return false;
+        return readPresses(in, MOUSE_PRESSES, progress) && readPresses(in, KEY_PRESSES, progress);
+    }
+
+    private static boolean readPresses(VarintInput in, int section, Progress progress) throws IOException {
+        int count = (int) in.readVarint();
+        long time = 0;
+        EventStore chunk = new EventStore(EventStore.Kind.PRESS, Math.min(count, CHUNK_SIZE));
+        for (int i = 0; i < count; i++) {
+            time += in.readSigned();
+            chunk.addPress(time, (int) in.readVarint(), (int) in.readSigned());
+            if (chunk.size() == CHUNK_SIZE) {
+                if (!progress.append(section, chunk)) return false;
+                chunk = new EventStore(EventStore.Kind.PRESS, Math.min(count - i - 1, CHUNK_SIZE));
+            }
+        }
+        return progress.append(section, chunk);
+    }
+
+    private static class Progress {
+        private final Sink sink;
+        private final CountingInputStream counter;
+        private final long totalBytes;
+
+        Progress(Sink sink, CountingInputStream counter, long totalBytes) {
+            this.sink = sink;
+            this.counter = counter;
+            this.totalBytes = totalBytes;
+        }
+
+        /**
+         * @return false if the sink was cancelled
+         */
+        boolean append(int section, EventStore chunk) {
+            if (sink.isCancelled()) return false;
+            if (!chunk.isEmpty()) sink.append(section, chunk);
+            sink.progress(counter.count, totalBytes);
+            return true;
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    /**
+     * Buffers by hand, {@link BufferedOutputStream#write(int)} is synchronized and would dominate per-byte writes.
+     */
+    private static class VarintOutput {
+        private final OutputStream out;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int position;
+
+        VarintOutput(OutputStream out) {
+            this.out = out;
+        }
+
+        void write(int b) throws IOException {
+            if (position == buffer.length) flush();
+            buffer[position++] = (byte) b;
+        }
+
+        void write(byte[] bytes) throws IOException {
+            for (byte b : bytes) write(b);
+        }
+
+        void writeVarint(long value) throws IOException {
+            if (position > buffer.length - 10) flush();
+            while ((value & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        void writeSigned(long value) throws IOException {
+            writeVarint((value << 1) ^ (value >> 63));
+        }
+
+        void flush() throws IOException {
+            out.write(buffer, 0, position);
+            position = 0;
+            out.flush();
+        }
+    }
+
+    private static class VarintInput {
+        private final InputStream in;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int position;
+        private int limit;
+
+        VarintInput(InputStream in) {
+            this.in = in;
+        }
+
+        int read() throws IOException {
+            if (position == limit) {
+                limit = in.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    throw new EOFException("Recording is truncated");
+                }
+            }
+            return buffer[position++] & 0xff;
+        }
+
+        long readVarint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = read();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        long readSigned() throws IOException {
+            long value = readVarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+}
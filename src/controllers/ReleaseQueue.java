@@ -0,0 +1,86 @@
+package controllers;
+
+import java.util.Arrays;
+
+/**
+ * Keys and buttons held down during playback, in a binary min-heap over primitive arrays keyed by release deadline,
+ * so the next release is always at the top and popping it is O(log n) however many inputs are held.
+ */
+public class ReleaseQueue {
+    private long[] deadlines = new long[16];
+    private byte[] types = new byte[16];
+    private int[] codes = new int[16];
+    private int size;
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * @param type {@link Timeline#KEY_PRESS} or {@link Timeline#BUTTON_PRESS}, whichever pressed the input
+     */
+    public void push(long deadline, byte type, int code) {
+        if (size == deadlines.length) {
+            deadlines = Arrays.copyOf(deadlines, size * 2);
+            types = Arrays.copyOf(types, size * 2);
+            codes = Arrays.copyOf(codes, size * 2);
+        }
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (deadlines[parent] <= deadline) break;
+            set(i, parent);
+            i = parent;
+        }
+        deadlines[i] = deadline;
+        types[i] = type;
+        codes[i] = code;
+    }
+
+    /**
+     * @return deadline of the next release, {@link Long#MAX_VALUE} if nothing is held
+     */
+    public long deadline() {
+        return size == 0 ? Long.MAX_VALUE : deadlines[0];
+    }
+
+    public byte type() {
+        return types[0];
+    }
+
+    public int code() {
+        return codes[0];
+    }
+
+    /**
+     * Removes the next release.
+     */
+    public void pop() {
+        size--;
+        long deadline = deadlines[size];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) break;
+            if (child + 1 < size && deadlines[child + 1] < deadlines[child]) child++;
+            if (deadline <= deadlines[child]) break;
+            set(i, child);
+            i = child;
+        }
+        set(i, size);
+    }
+
+    private void set(int to, int from) {
+        deadlines[to] = deadlines[from];
+        types[to] = types[from];
+        codes[to] = codes[from];
+    }
+}
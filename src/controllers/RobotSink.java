@@ -0,0 +1,31 @@
+package controllers;
+
+import java.awt.*;
+
+public class RobotSink implements InputSink {
+    private final Robot robot;
+
+    public RobotSink(Robot robot) {
+        this.robot = robot;
+    }
+
+    public void mouseMove(int x, int y) {
+        robot.mouseMove(x, y);
+    }
+
+    public void mousePress(int buttons) {
+        robot.mousePress(buttons);
+    }
+
+    public void mouseRelease(int buttons) {
+        robot.mouseRelease(buttons);
+    }
+
+    public void keyPress(int keycode) {
+        robot.keyPress(keycode);
+    }
+
+    public void keyRelease(int keycode) {
+        robot.keyRelease(keycode);
+    }
+}
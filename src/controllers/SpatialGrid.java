@@ -0,0 +1,113 @@
+package controllers;
+
+import java.util.Arrays;
+
+/**
+ * Uniform grid over the screen positions of the mouse samples in a time window, for hit-tests and box selection
+ * that only look at the cells they cover.
+ * <p>
+ * The grid is stored compactly, counting-sorted by cell: {@code cellStart[c]} to {@code cellStart[c + 1]} are the
+ * entries of cell {@code c} in {@code cellItems}. It is rebuilt in one pass over the window when the window or the
+ * store changes, so building it for tens of thousands of samples costs about as much as drawing them.
+ */
+public class SpatialGrid {
+    public static final int CELL_SIZE = 32;
+    private static final int MAX_CELLS = 1 << 16;
+
+    private final EventStore store;
+    private final TimeIndex index;
+    private int from = -1, to = -1;
+    private int modCount;
+
+    private int minX, minY, cellSize, columns, rows;
+    private int[] cellStart = new int[1];
+    private int[] cellItems = new int[0];
+
+    private int[] results = new int[16];
+    private int count;
+
+    public SpatialGrid(EventStore store, TimeIndex index) {
+        this.store = store;
+        this.index = index;
+    }
+
+    /**
+     * Covers the samples at positions {@code [from, to)} of the time index, rebuilding only if they or the store
+     * changed.
+     */
+    public void update(int from, int to) {
+        if (from == this.from && to == this.to && modCount == store.modCount()) return;
+        this.from = from;
+        this.to = to;
+        modCount = store.modCount();
+        int n = to - from;
+        if (n <= 0) {
+            columns = rows = 0;
+            return;
+        }
+        minX = Integer.MAX_VALUE;
+        minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        for (int i = from; i < to; i++) {
+            int e = index.get(i);
+            minX = Math.min(minX, store.x(e));
+            minY = Math.min(minY, store.y(e));
+            maxX = Math.max(maxX, store.x(e));
+            maxY = Math.max(maxY, store.y(e));
+        }
+        long spanX = (long) maxX - minX + 1, spanY = (long) maxY - minY + 1;
+        cellSize = CELL_SIZE;
+        while ((spanX + cellSize - 1) / cellSize * ((spanY + cellSize - 1) / cellSize) > MAX_CELLS) cellSize *= 2;
+        columns = (int) ((spanX + cellSize - 1) / cellSize);
+        rows = (int) ((spanY + cellSize - 1) / cellSize);
+        int cells = columns * rows;
+        if (cellStart.length < cells + 1) cellStart = new int[cells + 1];
+        else Arrays.fill(cellStart, 0, cells + 1, 0);
+        if (cellItems.length < n) cellItems = new int[n];
+        for (int i = from; i < to; i++) cellStart[cell(index.get(i)) + 1]++;
+        for (int c = 0; c < cells; c++) cellStart[c + 1] += cellStart[c];
+        int[] fill = Arrays.copyOf(cellStart, cells);
+        for (int i = from; i < to; i++) {
+            int e = index.get(i);
+            cellItems[fill[cell(e)]++] = e;
+        }
+    }
+
+    /**
+     * Collects the samples inside the screen rectangle {@code [x0, x1] x [y0, y1]}, to be read with
+     * {@link #result(int)}. The results stay valid until the next query.
+     *
+     * @return number of samples found
+     */
+    public int inside(int x0, int y0, int x1, int y1) {
+        count = 0;
+        if (columns == 0) return 0;
+        int c0 = Math.max(0, Math.floorDiv(x0 - minX, cellSize)), c1 = Math.min(columns - 1, Math.floorDiv(x1 - minX, cellSize));
+        int r0 = Math.max(0, Math.floorDiv(y0 - minY, cellSize)), r1 = Math.min(rows - 1, Math.floorDiv(y1 - minY, cellSize));
+        for (int r = r0; r <= r1; r++)
+            for (int c = c0; c <= c1; c++) {
+                int cell = r * columns + c;
+                // cells strictly inside the rectangle need no per-sample test
+                boolean interior = c > c0 && c < c1 && r > r0 && r < r1;
+                for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                    int e = cellItems[i];
+                    if (interior || store.x(e) >= x0 && store.x(e) <= x1 && store.y(e) >= y0 && store.y(e) <= y1) {
+                        if (count == results.length) results = Arrays.copyOf(results, count * 2);
+                        results[count++] = e;
+                    }
+                }
+            }
+        return count;
+    }
+
+    /**
+     * @return index in the store of the {@code i}th sample found by the last query
+     */
+    public int result(int i) {
+        return results[i];
+    }
+
+    private int cell(int e) {
+        return (store.y(e) - minY) / cellSize * columns + (store.x(e) - minX) / cellSize;
+    }
+}
@@ -0,0 +1,130 @@
+package controllers;
+
+import java.util.List;
+
+/**
+ * Events of an {@link EventStore} in time order, for binary searched point and window queries.
+ * <p>
+ * A store that is already in time order, which is every recording until its events are dragged around, is indexed
+ * as is; otherwise the index holds a stably sorted permutation of the event indices. Queries bring the index up to
+ * date first: events appended in time order only extend it, anything else rebuilds it.
+ * Positions passed to and returned from the queries are in time order; {@link #get(int)} maps them back to event
+ * indices in the store.
+ */
+public class TimeIndex {
+    private final EventStore store;
+    private int[] order; // null while the store itself is in time order
+    private int size;
+    private int version;
+
+    public TimeIndex(EventStore store) {
+        this.store = store;
+        version = store.timeVersion() - 1;
+    }
+
+    public int size() {
+        refresh();
+        return size;
+    }
+
+    /**
+     * @return index in the store of the event at {@code position} in time order
+     */
+    public int get(int position) {
+        return order == null ? position : order[position];
+    }
+
+    public long time(int position) {
+        return store.time(get(position));
+    }
+
+    /**
+     * @return first position with a time at or after {@code time}, or {@link #size()} if there is none
+     */
+    public int lowerBound(long time) {
+        refresh();
+        int low = 0, high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (time(mid) < time) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * @return first position with a time after {@code time}, or {@link #size()} if there is none
+     */
+    public int upperBound(long time) {
+        refresh();
+        int low = 0, high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (time(mid) <= time) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * @return last position with a time at or before {@code time}, or -1 if there is none
+     */
+    public int floor(long time) {
+        return upperBound(time) - 1;
+    }
+
+    /**
+     * Brings the index up to date with the store; queries call this themselves.
+     */
+    public void refresh() {
+        if (version == store.timeVersion()) {
+            size = store.size(); // appended in time order since
+            return;
+        }
+        version = store.timeVersion();
+        size = store.size();
+        if (store.isSorted()) {
+            order = null;
+            return;
+        }
+        if (order == null || order.length < size) order = new int[size];
+        int[] buffer = new int[size];
+        for (int i = 0; i < size; i++) order[i] = i;
+        sort(order, buffer, 0, size);
+    }
+
+    private void sort(int[] a, int[] buffer, int from, int to) {
+        if (to - from < 16) {
+            for (int i = from + 1; i < to; i++) {
+                int v = a[i], j = i - 1;
+                while (j >= from && store.time(a[j]) > store.time(v)) a[j + 1] = a[j--];
+                a[j + 1] = v;
+            }
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        sort(a, buffer, from, mid);
+        sort(a, buffer, mid, to);
+        if (store.time(a[mid - 1]) <= store.time(a[mid])) return;
+        System.arraycopy(a, from, buffer, from, to - from);
+        for (int i = from, l = from, r = mid; i < to; i++)
+            a[i] = r >= to || l < mid && store.time(buffer[l]) <= store.time(buffer[r]) ? buffer[l++] : buffer[r++];
+    }
+
+    /**
+     * Screen states are captured in time order, so they are searched as they are.
+     *
+     * @return the screen state shown at {@code time}: the last one at or before it, or the first one if {@code time}
+     * is before all of them; -1 if there are none
+     */
+    public static int floor(List<Recorder.ScreenState> states, long time) {
+        if (states.isEmpty()) return -1;
+        int low = 0, high = states.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (states.get(mid).time <= time) low = mid + 1;
+            else high = mid;
+        }
+        return Math.max(low - 1, 0);
+    }
+}
@@ -0,0 +1,224 @@
+package controllers;
+
+/**
+ * A recording compiled for playback: every move and press as one array of primitive actions in the order they are
+ * to be dispatched, so playing it is a single cursor moving forward. A press carries its duration; the player
+ * schedules its release when it dispatches it.
+ * <p>
+ * Actions are sorted stably by time. At the same millisecond moves go first, so clicks land where the cursor was
+ * recorded. The stores are read once and never changed; editing them afterwards does not affect a compiled
+ * timeline.
+ */
+public class Timeline {
+    public static final byte MOVE = 0;
+    public static final byte KEY_PRESS = 1;
+    public static final byte BUTTON_PRESS = 2;
+
+    public enum Validation {
+        /**
+         * Throw {@link IllegalArgumentException} on events out of time order, negative times or durations, and
+         * presses of a key or button that is still held by an earlier press.
+         */
+        REJECT,
+        /**
+         * Sort events into time order, clamp negative times and durations to zero, and cut a press short where the
+         * next press of the same key or button starts.
+         */
+        REPAIR
+    }
+
+    private static final int DROPPED = -1;
+
+    private final long[] time;
+    private final byte[] type;
+    private final int[] a, b;
+    private final int[] nextMove;
+    private final int size;
+    private long length;
+    /**
+     * Number of events {@link Validation#REPAIR} had to move or change.
+     */
+    public final int repairs;
+
+    private Timeline(int size, int repairs) {
+        this.size = size;
+        this.repairs = repairs;
+        time = new long[size];
+        type = new byte[size];
+        a = new int[size];
+        b = new int[size];
+        nextMove = new int[size + 1];
+    }
+
+    public static Timeline compile(EventStore mousePositions, EventStore mousePresses, EventStore keyPresses, Validation validation) {
+        int moves = mousePositions.size(), buttons = mousePresses.size(), keys = keyPresses.size();
+        int[] repairs = {0};
+        long[] moveTimes = times(mousePositions, "mouse position", validation, repairs);
+        long[] buttonTimes = times(mousePresses, "mouse press", validation, repairs);
+        long[] keyTimes = times(keyPresses, "key press", validation, repairs);
+        int[] buttonDurations = durations(mousePresses, buttonTimes, "mouse press", validation, repairs);
+        int[] keyDurations = durations(keyPresses, keyTimes, "key press", validation, repairs);
+
+        int n = moves + buttons + keys;
+        long[] sortKeys = new long[n]; // time * 2, plus one for presses so they go after moves
+        for (int i = 0; i < moves; i++) sortKeys[i] = moveTimes[i] * 2;
+        int dropped = rankPresses(buttonTimes, buttonDurations, sortKeys, moves) + rankPresses(keyTimes, keyDurations, sortKeys, moves + buttons);
+        int[] order = sortedOrder(sortKeys);
+
+        n -= dropped;
+        Timeline timeline = new Timeline(n, repairs[0]);
+        for (int i = 0; i < n; i++) {
+            int e = order[i];
+            timeline.time[i] = sortKeys[e] >> 1;
+            if (e < moves) {
+                timeline.type[i] = MOVE;
+                timeline.a[i] = mousePositions.x(e);
+                timeline.b[i] = mousePositions.y(e);
+            } else if (e < moves + buttons) {
+                timeline.type[i] = BUTTON_PRESS;
+                timeline.a[i] = mousePresses.code(e - moves);
+                timeline.b[i] = buttonDurations[e - moves];
+            } else {
+                timeline.type[i] = KEY_PRESS;
+                timeline.a[i] = keyPresses.code(e - moves - buttons);
+                timeline.b[i] = keyDurations[e - moves - buttons];
+            }
+            timeline.length = Math.max(timeline.length, timeline.time[i] + (timeline.type[i] == MOVE ? 0 : timeline.b[i]));
+        }
+        timeline.nextMove[n] = n;
+        for (int i = n - 1; i >= 0; i--) timeline.nextMove[i] = timeline.type[i] == MOVE ? i : timeline.nextMove[i + 1];
+        return timeline;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long time(int i) {
+        return time[i];
+    }
+
+    public byte type(int i) {
+        return type[i];
+    }
+
+    /**
+     * @return x of a move, or the AWT key code or button mask of a press
+     */
+    public int a(int i) {
+        return a[i];
+    }
+
+    /**
+     * @return y of a move, or the duration of a press in milliseconds
+     */
+    public int b(int i) {
+        return b[i];
+    }
+
+    /**
+     * @return index of the first move at or after action {@code i}, or {@link #size()} if there is none
+     */
+    public int nextMove(int i) {
+        return nextMove[i];
+    }
+
+    /**
+     * @return time of the last action or release, 0 if there are none
+     */
+    public long length() {
+        return length;
+    }
+
+    private static long[] times(EventStore store, String name, Validation validation, int[] repairs) {
+        long[] times = new long[store.size()];
+        for (int i = 0; i < times.length; i++) {
+            long time = store.time(i);
+            if (time < 0) {
+                if (validation == Validation.REJECT) throw new IllegalArgumentException(name + " " + i + " at negative time " + time);
+                time = 0;
+                repairs[0]++;
+            }
+            if (i > 0 && time < times[i - 1]) {
+                if (validation == Validation.REJECT)
+                    throw new IllegalArgumentException(name + " " + i + " at " + time + " ms is before the one at " + times[i - 1] + " ms");
+                repairs[0]++;
+            }
+            times[i] = time;
+        }
+        return times;
+    }
+
+    private static int[] durations(EventStore presses, long[] times, String name, Validation validation, int[] repairs) {
+        int[] durations = new int[presses.size()];
+        for (int i = 0; i < durations.length; i++) {
+            durations[i] = presses.duration(i);
+            if (durations[i] < 0) {
+                if (validation == Validation.REJECT) throw new IllegalArgumentException(name + " " + i + " has negative duration " + durations[i]);
+                durations[i] = 0;
+                repairs[0]++;
+            }
+        }
+        OpenPresses last = new OpenPresses(); // latest press of every code so far, in time order
+        for (int press : sortedOrder(times)) {
+            int code = presses.code(press), previous = last.get(code);
+            if (previous >= 0 && times[previous] + durations[previous] > times[press]) {
+                if (validation == Validation.REJECT)
+                    throw new IllegalArgumentException(name + " " + press + " at " + times[press] + " ms while the one at " + times[previous] + " ms is still held");
+                repairs[0]++;
+                if (times[previous] == times[press]) { // the same press twice, keep one covering both
+                    durations[previous] = (int) Math.max(durations[previous], times[press] + durations[press] - times[previous]);
+                    durations[press] = DROPPED;
+                    continue;
+                }
+                durations[previous] = (int) (times[press] - times[previous]);
+            }
+            last.put(code, press);
+        }
+        return durations;
+    }
+
+    /**
+     * Puts the sort keys of the presses at {@code offset}. Dropped presses sort after everything else, to be cut off.
+     *
+     * @return number of dropped presses
+     */
+    private static int rankPresses(long[] times, int[] durations, long[] keys, int offset) {
+        int dropped = 0;
+        for (int press = 0; press < times.length; press++) {
+            if (durations[press] == DROPPED) {
+                keys[offset + press] = Long.MAX_VALUE;
+                dropped++;
+            } else keys[offset + press] = times[press] * 2 + 1;
+        }
+        return dropped;
+    }
+
+    /**
+     * @return indices of {@code keys} stably sorted by key; close to linear when they are mostly in order already
+     */
+    private static int[] sortedOrder(long[] keys) {
+        int[] order = new int[keys.length], buffer = new int[keys.length];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        sort(keys, order, buffer, 0, order.length);
+        return order;
+    }
+
+    private static void sort(long[] keys, int[] a, int[] buffer, int from, int to) {
+        if (to - from < 16) {
+            for (int i = from + 1; i < to; i++) {
+                int v = a[i], j = i - 1;
+                while (j >= from && keys[a[j]] > keys[v]) a[j + 1] = a[j--];
+                a[j + 1] = v;
+            }
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        sort(keys, a, buffer, from, mid);
+        sort(keys, a, buffer, mid, to);
+        if (keys[a[mid - 1]] <= keys[a[mid]]) return;
+        System.arraycopy(a, from, buffer, from, to - from);
+        for (int i = from, l = from, r = mid; i < to; i++)
+            a[i] = r >= to || l < mid && keys[buffer[l]] <= keys[buffer[r]] ? buffer[l++] : buffer[r++];
+    }
+}
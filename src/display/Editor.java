@@ -1,5 +1,6 @@
 package display;
 
+import controllers.EventStore;
 import controllers.Recorder;
 
 import javax.swing.*;
@@ -7,9 +8,7 @@ import java.awt.*;
 import java.awt.event.MouseWheelEvent;
 import java.awt.event.MouseWheelListener;
 import java.io.File;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.BitSet;
 
 public class Editor extends JPanel implements MouseWheelListener {
     public static final Color SELECTED_COLOR = new Color(0xf05454);
@@ -21,15 +20,17 @@ public class Editor extends JPanel implements MouseWheelListener {
     private final Recorder recorder;
     private final KeyTimeline keyTimeline;
 
-    public final Map<Recorder.Press, Integer> offsetMap;
-    public final ArrayList<Recorder.TimedObject> selected;
+    public final BitSet selectedKeys;
+    public final BitSet selectedButtons;
+    public final BitSet selectedPositions;
     private JMenuItem timeDisplay;
 
     public Editor() throws AWTException {
         recorder = new Recorder(this);
         setLayout(new BoxLayout(this, BoxLayout.Y_AXIS));
-        selected = new ArrayList<>();
-        offsetMap = new HashMap<>();
+        selectedKeys = new BitSet();
+        selectedButtons = new BitSet();
+        selectedPositions = new BitSet();
         keyTimeline = new KeyTimeline(this, recorder);
         MouseTimeline mouseTimeline = new MouseTimeline(this, recorder);
         MouseDisplay mouseDisplay = new MouseDisplay(this, recorder);
@@ -44,6 +45,16 @@ public class Editor extends JPanel implements MouseWheelListener {
                         Editor.this.update();
                     });
                 }});
+                add(new JMenuItem(Strings.get().LATENCY_REPORT) {{
+                    addActionListener(e -> recorder.saveLatencyReport());
+                }});
+                add(new JMenuItem(Strings.get().RECORDING_STATS) {{
+                    addActionListener(e -> {
+                        String statistics = recorder.statistics();
+                        if (statistics != null)
+                            JOptionPane.showMessageDialog(Editor.this, statistics, Strings.get().RECORDING_STATS, JOptionPane.INFORMATION_MESSAGE);
+                    });
+                }});
             }});
             add(new JMenu(Strings.get().HOTKEY) {{
                 add(new Settings.HotkeyView(Strings.get().RECORD, Settings.RECORD_KEY, e -> recorder.record()));
@@ -94,7 +105,7 @@ public class Editor extends JPanel implements MouseWheelListener {
     }
 
     public void update() { // recording changed
-        totalLength = Math.max(Math.max(lastObjectTime(recorder.keyPresses), lastObjectTime(recorder.mousePositions)), lastObjectTime(recorder.mousePresses));
+        totalLength = Math.max(Math.max(recorder.keyPresses.lastTime(), recorder.mousePositions.lastTime()), recorder.mousePresses.lastTime());
         keyTimeline.update();
         repaint();
     }
@@ -107,13 +118,42 @@ public class Editor extends JPanel implements MouseWheelListener {
         repaint();
     }
 
-    public static Rectangle getRectangle(Recorder.Press press, int blockHeight, int index, int width, int height, Editor editor) {
-        return new Rectangle(
-                mapToPos(press.time, editor.currentTime, editor.timeRange, width),
+    public Recorder recorder() {
+        return recorder;
+    }
+
+    public boolean hasSelection() {
+        return !selectedKeys.isEmpty() || !selectedButtons.isEmpty() || !selectedPositions.isEmpty();
+    }
+
+    public void clearSelection() {
+        selectedKeys.clear();
+        selectedButtons.clear();
+        selectedPositions.clear();
+    }
+
+    public void moveSelectedPresses(long deltaTime) {
+        for (int i = selectedKeys.nextSetBit(0); i >= 0; i = selectedKeys.nextSetBit(i + 1))
+            recorder.keyPresses.setTime(i, recorder.keyPresses.time(i) + deltaTime);
+        for (int i = selectedButtons.nextSetBit(0); i >= 0; i = selectedButtons.nextSetBit(i + 1))
+            recorder.mousePresses.setTime(i, recorder.mousePresses.time(i) + deltaTime);
+    }
+
+    public static Rectangle getRectangle(EventStore presses, int press, int blockHeight, int index, int width, int height, Editor editor, Rectangle rectangle) {
+        rectangle.setBounds(
+                mapToPos(presses.time(press), editor.currentTime, editor.timeRange, width),
                 height - blockHeight - blockHeight * index,
-                (int) map(press.duration, editor.timeRange, width / 2d),
+                (int) map(presses.duration(press), editor.timeRange, width / 2d),
                 blockHeight
         );
+        return rectangle;
+    }
+
+    /**
+     * @return milliseconds covered by one pixel of a timeline, rounded up
+     */
+    public long timePerPixel(int width) {
+        return (long) Math.ceil(timeRange * 2d / Math.max(width, 1));
     }
 
     public static int mapToPos(long time, long currentTime, long timeRange, int width) {
@@ -128,13 +168,6 @@ public class Editor extends JPanel implements MouseWheelListener {
         return old * newRange / range;
     }
 
-    public static long lastObjectTime(ArrayList<? extends Recorder.TimedObject> objects) {
-        if (objects.size() == 0) return 0;
-        Recorder.TimedObject object = objects.get(objects.size() - 1);
-        if (object instanceof Recorder.Press) return object.time + ((Recorder.Press) object).duration;
-        else return object.time;
-    }
-
     public void openFile(File file) {
         recorder.openFromFile(file);
     }
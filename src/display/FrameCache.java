@@ -0,0 +1,117 @@
+package display;
+
+import controllers.Recorder;
+
+import java.awt.image.BufferedImage;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Decoded {@link Recorder.ScreenState} images kept in least recently used order under a byte budget, so repainting
+ * the same frame does not decode it again. Frames ahead in the scrub direction are decoded on a background thread
+ * before they are asked for.
+ */
+public class FrameCache {
+    public static final long DEFAULT_BUDGET = 64L << 20;
+    public static final int PREFETCH = 4;
+
+    private final long budget;
+    private final LinkedHashMap<Recorder.ScreenState, BufferedImage> images = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<Recorder.ScreenState> pending = new HashSet<>();
+    private final ExecutorService prefetcher = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "Frame prefetch");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+    private long bytes;
+    private long hits, misses, evictions;
+
+    public FrameCache() {
+        this(DEFAULT_BUDGET);
+    }
+
+    public FrameCache(long budget) {
+        this.budget = budget;
+    }
+
+    public BufferedImage get(Recorder.ScreenState state) {
+        synchronized (this) {
+            BufferedImage image = images.get(state);
+            if (image != null) {
+                hits++;
+                return image;
+            }
+            misses++;
+        }
+        BufferedImage image = state.getImage();
+        if (image != null) put(state, image);
+        return image;
+    }
+
+    /**
+     * Decodes up to {@link #PREFETCH} frames after {@code index} in {@code direction} in the background.
+     *
+     * @param direction 1 when scrubbing forward, -1 when scrubbing backward
+     */
+    public void prefetch(List<Recorder.ScreenState> states, int index, int direction) {
+        for (int i = 1; i <= PREFETCH; i++) {
+            int next = index + i * direction;
+            if (next < 0 || next >= states.size()) return;
+            Recorder.ScreenState state = states.get(next);
+            synchronized (this) {
+                if (images.containsKey(state) || !pending.add(state)) continue;
+            }
+            prefetcher.execute(() -> {
+                BufferedImage image = state.getImage();
+                synchronized (this) {
+                    pending.remove(state);
+                }
+                if (image != null) put(state, image);
+            });
+        }
+    }
+
+    public synchronized void clear() {
+        images.clear();
+        bytes = 0;
+    }
+
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    private synchronized void put(Recorder.ScreenState state, BufferedImage image) {
+        BufferedImage old = images.put(state, image);
+        if (old != null) bytes -= sizeOf(old);
+        bytes += sizeOf(image);
+        Iterator<BufferedImage> eldest = images.values().iterator();
+        while (bytes > budget && images.size() > 1) {
+            bytes -= sizeOf(eldest.next());
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    private static long sizeOf(BufferedImage image) {
+        return (long) image.getWidth() * image.getHeight() * image.getColorModel().getPixelSize() / 8;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("frame cache: %d frames, %d KB, %d hits, %d misses, %d evictions", images.size(), bytes >> 10, hits, misses, evictions);
+    }
+}
@@ -1,11 +1,14 @@
 package display;
 
+import controllers.EventStore;
+import controllers.IntervalIndex;
 import controllers.Recorder;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import static display.Editor.*;
 
@@ -16,7 +19,10 @@ public class KeyTimeline extends JComponent implements MouseWheelListener, Mouse
 
     private int startDragPos;
     private long startDragTime;
+    private long lastDragTime;
     private int blockHeight;
+    private final Rectangle rectangle = new Rectangle();
+    private int[] lastColumn = new int[0];
 
     public KeyTimeline(Editor editor, Recorder recorder) {
         this.editor = editor;
@@ -41,14 +47,22 @@ public class KeyTimeline extends JComponent implements MouseWheelListener, Mouse
         g.drawLine(width / 2, 0, width / 2, height);
         g.drawLine(0, height - 1, width, height - 1);
 
-        recorder.keyPresses.stream().filter(press -> press.time <= editor.currentTime + editor.timeRange && editor.currentTime - editor.timeRange <= press.time + press.duration).forEach(press -> {
-            if (appearedKeyCodes.size() == 0) return;
-            boolean selected = editor.selected.contains(press);
+        EventStore keyPresses = recorder.keyPresses;
+        IntervalIndex index = recorder.keyIndex;
+        Arrays.fill(lastColumn, Integer.MIN_VALUE);
+        if (appearedKeyCodes.size() > 0) for (int i = 0, n = index.overlapping(editor.currentTime - editor.timeRange, editor.currentTime + editor.timeRange); i < n; i++) {
+            int press = index.result(i);
+            boolean selected = editor.selectedKeys.get(press);
+            int row = appearedKeyCodes.indexOf(keyPresses.code(press));
+            getRectangle(keyPresses, press, blockHeight, row, width, height, editor, rectangle);
+            if (row >= 0 && rectangle.width == 0) { // zoomed out below a pixel per press
+                if (rectangle.x == lastColumn[row] && !selected) continue; // same pixels as the last one
+                lastColumn[row] = rectangle.x;
+            }
             if (selected) g.setColor(SELECTED_COLOR);
-            Rectangle rectangle = getRectangle(press, blockHeight, appearedKeyCodes.indexOf(press.code), width, height, editor);
             g.drawRect(rectangle.x, rectangle.y, rectangle.width, rectangle.height);
             if (selected) g.setColor(old);
-        });
+        }
         g.drawString(String.valueOf(editor.timeRange / 1000d), 0, 10);
 
         g.setColor(SELECTED_COLOR);
@@ -61,9 +75,11 @@ public class KeyTimeline extends JComponent implements MouseWheelListener, Mouse
 
     public void update() {
         appearedKeyCodes.clear();
-        for (Recorder.Press press : recorder.keyPresses)
-            if (!appearedKeyCodes.contains(press.code)) appearedKeyCodes.add(press.code);
+        for (int press = 0; press < recorder.keyPresses.size(); press++)
+            if (!appearedKeyCodes.contains(recorder.keyPresses.code(press)))
+                appearedKeyCodes.add(recorder.keyPresses.code(press));
         if (appearedKeyCodes.size() > 0) blockHeight = getHeight() / appearedKeyCodes.size();
+        lastColumn = new int[appearedKeyCodes.size()];
     }
 
     public void mouseWheelMoved(MouseWheelEvent e) {
@@ -81,24 +97,24 @@ public class KeyTimeline extends JComponent implements MouseWheelListener, Mouse
         int height = getHeight();
         startDragPos = e.getX();
         startDragTime = editor.currentTime;
-        if ((e.getModifiers() & InputEvent.SHIFT_MASK) == 0) {
-            editor.selected.clear();
-            editor.offsetMap.clear();
-        }
-        recorder.keyPresses.stream()
-                .filter(press -> press.time <= editor.currentTime + editor.timeRange && editor.currentTime - editor.timeRange <= press.time + press.duration)
-                .filter(press -> getRectangle(press, blockHeight, appearedKeyCodes.indexOf(press.code), width, height, editor).contains(e.getPoint()))
-                .forEach(editor.selected::add);
-        editor.selected.stream().filter(obj -> obj instanceof Recorder.Press).forEach(press -> editor.offsetMap.put((Recorder.Press) press, e.getX() - mapToPos(press.time, editor.currentTime, editor.timeRange, width)));
+        lastDragTime = mapToTime(e.getX(), width, editor.currentTime, editor.timeRange);
+        if ((e.getModifiers() & InputEvent.SHIFT_MASK) == 0) editor.clearSelection();
+        EventStore keyPresses = recorder.keyPresses;
+        IntervalIndex index = recorder.keyIndex;
+        long slack = editor.timePerPixel(width);
+        for (int i = 0, n = index.overlapping(lastDragTime - slack, lastDragTime + slack), press; i < n; i++)
+            if (getRectangle(keyPresses, press = index.result(i), blockHeight, appearedKeyCodes.indexOf(keyPresses.code(press)), width, height, editor, rectangle).contains(e.getPoint()))
+                editor.selectedKeys.set(press);
         editor.repaint();
     }
 
     public void mouseDragged(MouseEvent e) {
         int width = getWidth();
-        if (editor.selected.size() > 0)
-            editor.selected.stream().filter(obj -> obj instanceof Recorder.Press)
-                    .forEach(obj -> obj.time = mapToTime(e.getX() - editor.offsetMap.get(obj), width, editor.currentTime, editor.timeRange));
-        else editor.currentTime = (long) (startDragTime - map(e.getX() - startDragPos, width / 2d, editor.timeRange));
+        if (editor.hasSelection()) {
+            long time = mapToTime(e.getX(), width, editor.currentTime, editor.timeRange);
+            editor.moveSelectedPresses(time - lastDragTime);
+            lastDragTime = time;
+        } else editor.currentTime = (long) (startDragTime - map(e.getX() - startDragPos, width / 2d, editor.timeRange));
         editor.repaint();
     }
 
@@ -1,27 +1,43 @@
 package display;
 
+import controllers.EventStore;
+import controllers.PathPyramid;
 import controllers.Recorder;
+import controllers.SpatialGrid;
+import controllers.TimeIndex;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.OptionalInt;
-import java.util.stream.IntStream;
+import java.util.BitSet;
 
 import static display.Editor.SELECTED_COLOR;
 import static display.Editor.map;
 
 public class MouseDisplay extends JComponent implements MouseListener, MouseMotionListener, ComponentListener {
     public static int circleRadius = 2;
+    /**
+     * Time drawing the whole path may take, in nanoseconds, which the level of detail adapts to.
+     */
+    public static final long FRAME_BUDGET = 8_000_000;
+    private static final int MIN_PATH_BUDGET = 256, MAX_PATH_BUDGET = 16384;
+    private static final int MIN_COST_SAMPLE = 256;
 
     private final Editor editor;
     private final Recorder recorder;
 
-    private final Map<Recorder.MousePos, Point> offsetMap;
+    public final FrameCache frameCache = new FrameCache();
+    private int lastFrame = -1;
+
     private final Point startDragPos;
+    private final SpatialGrid grid;
+    private final Rectangle band = new Rectangle();
+    private final Point bandStart = new Point();
+    private boolean banding;
+    private int pathBudget = 2048; // samples, or pyramid buckets, drawn per frame
+    private double nanosPerPrimitive;
+    private final PathTiles pathTiles;
     private int width;
     private int height;
     private double sWidth;
@@ -35,8 +51,19 @@ public class MouseDisplay extends JComponent implements MouseListener, MouseMoti
         addMouseMotionListener(this);
         addComponentListener(this);
 
-        offsetMap = new HashMap<>();
         startDragPos = new Point(0, 0);
+        grid = new SpatialGrid(recorder.mousePositions, recorder.positionIndex);
+        pathTiles = new PathTiles(recorder.mousePositions, new PathTiles.Painter() {
+            public int paint(Graphics g, int level, long from, long to) {
+                return path(g, null, level, from, to);
+            }
+
+            public void bounds(int level, long from, long to, Rectangle bounds) {
+                bounds.setBounds(0, 0, -1, -1);
+                path(null, bounds, level, from, to);
+                if (bounds.width >= 0) bounds.grow(circleRadius + 1, circleRadius + 1); // a single point is still 0 x 0
+            }
+        });
 
         width = getWidth();
         height = getHeight();
@@ -48,61 +75,152 @@ public class MouseDisplay extends JComponent implements MouseListener, MouseMoti
     @Override
     public void paint(Graphics g) {
         ArrayList<Recorder.ScreenState> screenStates = recorder.screenStates;
-        if (screenStates.size() > 1) {
-            OptionalInt any = IntStream.range(0, screenStates.size() - 1).filter(i -> screenStates.get(i).time <= editor.currentTime && screenStates.get(i + 1).time > editor.currentTime).findAny();
-            if (any.isPresent()) g.drawImage(screenStates.get(any.getAsInt()).getImage(), 0, 0, width, height, null);
-            else if (Math.abs(editor.currentTime - screenStates.get(0).time) < Math.abs(editor.currentTime - screenStates.get(screenStates.size() - 1).time))
-                g.drawImage(screenStates.get(0).getImage(), 0, 0, width, height, null);
-            else g.drawImage(screenStates.get(screenStates.size() - 1).getImage(), 0, 0, width, height, null);
+        if (screenStates.isEmpty() && lastFrame >= 0) {
+            frameCache.clear();
+            lastFrame = -1;
+        }
+        int frame = TimeIndex.floor(screenStates, editor.currentTime);
+        if (frame >= 0) {
+            g.drawImage(frameCache.get(screenStates.get(frame)), 0, 0, width, height, null);
+            if (frame != lastFrame && lastFrame >= 0)
+                frameCache.prefetch(screenStates, frame, frame > lastFrame ? 1 : -1);
+            lastFrame = frame;
         }
         Color color = g.getColor();
-        ArrayList<Recorder.MousePos> mousePositions = recorder.mousePositions;
-        IntStream.range(0, mousePositions.size()).filter(i -> Math.abs(mousePositions.get(i).time - editor.currentTime) < editor.timeRange).forEach(i -> {
-            Recorder.MousePos pos = mousePositions.get(i);
-            if (i != 0) {
-                Recorder.MousePos prev = mousePositions.get(i - 1);
-                if (editor.currentTime >= prev.time && editor.currentTime < pos.time) drawCursor(g, prev, pos, color);
-                g.drawLine((int) map(pos.x, sWidth, width), (int) map(pos.y, sHeight, height), (int) map(prev.x, sWidth, width), (int) map(prev.y, sHeight, height));
-            }
-            g.drawOval((int) map(pos.x, sWidth, width) - circleRadius, (int) map(pos.y, sHeight, height) - circleRadius, circleRadius * 2, circleRadius * 2);
-        });
+        EventStore mousePositions = recorder.mousePositions;
+        TimeIndex index = recorder.positionIndex;
+        long from = editor.currentTime - editor.timeRange + 1, to = editor.currentTime + editor.timeRange;
+        int level = index.lowerBound(to) - index.lowerBound(from) <= pathBudget ? 0 : recorder.positionPyramid.level(2L * editor.timeRange / pathBudget);
+        long begin = System.nanoTime();
+        // simplified levels are cheap by construction, and their chunks span so much of the screen that compositing
+        // tiles of them costs more than drawing them
+        int primitives = level == 0 ? pathTiles.paint(g, getGraphicsConfiguration(), level, from, to, width, height) : path(g, null, level, from, to);
+        adaptBudget(System.nanoTime() - begin, primitives);
+        int cursor = index.floor(editor.currentTime);
+        if (cursor >= 0 && cursor + 1 < index.size() && Math.abs(index.time(cursor + 1) - editor.currentTime) < editor.timeRange)
+            drawCursor(g, mousePositions, index.get(cursor), index.get(cursor + 1), color);
         g.setColor(SELECTED_COLOR);
-        editor.selected.stream().filter(object -> object instanceof Recorder.MousePos).forEach(object -> g.drawOval((int) map(((Recorder.MousePos) object).x, sWidth, width) - circleRadius, (int) map(((Recorder.MousePos) object).y, sHeight, height) - circleRadius, circleRadius * 2, circleRadius * 2));
+        BitSet selected = editor.selectedPositions;
+        for (int pos = selected.nextSetBit(0); pos >= 0; pos = selected.nextSetBit(pos + 1))
+            g.drawOval((int) map(mousePositions.x(pos), sWidth, width) - circleRadius, (int) map(mousePositions.y(pos), sHeight, height) - circleRadius, circleRadius * 2, circleRadius * 2);
+        if (banding) g.drawRect(band.x, band.y, band.width, band.height);
         g.setColor(color);
     }
 
-    private void drawCursor(Graphics g, Recorder.MousePos prev, Recorder.MousePos pos, Color defaultColor) {
-        double dt = (editor.currentTime - prev.time) * 1.0 / (pos.time - prev.time);
-        double dx = pos.x - prev.x;
-        double dy = pos.y - prev.y;
-        Point currentPoint = new Point((int) map(prev.x + dt * dx, sWidth, width), (int) map(prev.y + dt * dy, sHeight, height));
+    /**
+     * Draws the path of the samples timed in {@code [from, to)}: every sample with its segment from the one before
+     * at level 0, otherwise the polyline through the samples the pyramid keeps for the buckets starting there.
+     * Either argument may be null; {@code bounds} is grown to cover the points drawn.
+     *
+     * @return number of primitives drawn
+     */
+    private int path(Graphics g, Rectangle bounds, int level, long from, long to) {
+        EventStore mousePositions = recorder.mousePositions;
+        int primitives = 0;
+        if (level == 0) {
+            TimeIndex index = recorder.positionIndex;
+            for (int i = index.lowerBound(from), end = index.lowerBound(to); i < end; i++) {
+                int pos = index.get(i);
+                int x = (int) map(mousePositions.x(pos), sWidth, width), y = (int) map(mousePositions.y(pos), sHeight, height);
+                if (i != 0) {
+                    int prev = index.get(i - 1);
+                    int prevX = (int) map(mousePositions.x(prev), sWidth, width), prevY = (int) map(mousePositions.y(prev), sHeight, height);
+                    if (g != null) g.drawLine(x, y, prevX, prevY);
+                    if (bounds != null) bounds.add(prevX, prevY);
+                }
+                if (g != null) g.drawOval(x - circleRadius, y - circleRadius, circleRadius * 2, circleRadius * 2);
+                if (bounds != null) bounds.add(x, y);
+                primitives += 2;
+            }
+            return primitives;
+        }
+        PathPyramid pyramid = recorder.positionPyramid;
+        int b = pyramid.from(level, from), end = pyramid.from(level, to);
+        if (b >= end) return 0;
+        int r = b > 0 ? pyramid.repsTo(level, b - 1) - 1 : pyramid.repsFrom(level, b); // join the bucket before
+        int pos = pyramid.rep(level, r);
+        int prevX = (int) map(mousePositions.x(pos), sWidth, width), prevY = (int) map(mousePositions.y(pos), sHeight, height);
+        if (bounds != null) bounds.add(prevX, prevY);
+        for (r++; r < pyramid.repsTo(level, end - 1); r++) {
+            pos = pyramid.rep(level, r);
+            int x = (int) map(mousePositions.x(pos), sWidth, width), y = (int) map(mousePositions.y(pos), sHeight, height);
+            if (g != null) g.drawLine(prevX, prevY, x, y);
+            if (bounds != null) bounds.add(x, y);
+            prevX = x;
+            prevY = y;
+            primitives++;
+        }
+        return primitives;
+    }
+
+    /**
+     * Sizes the path budget from the measured cost of a primitive so that drawing the whole window, as after a jump
+     * or a zoom, stays within {@link #FRAME_BUDGET}. Halving or doubling only outside a factor of two keeps the level
+     * of detail, and the cached tiles with it, from flickering between two levels.
+     */
+    private void adaptBudget(long elapsed, int primitives) {
+        if (primitives < MIN_COST_SAMPLE) return;
+        double cost = (double) elapsed / primitives;
+        nanosPerPrimitive = nanosPerPrimitive == 0 ? cost : nanosPerPrimitive * 0.8 + cost * 0.2;
+        double fits = FRAME_BUDGET / (2 * nanosPerPrimitive);
+        if (fits > pathBudget * 2 && pathBudget < MAX_PATH_BUDGET) pathBudget *= 2;
+        else if (fits < pathBudget / 2 && pathBudget > MIN_PATH_BUDGET) pathBudget /= 2;
+    }
+
+    private void drawCursor(Graphics g, EventStore mousePositions, int prev, int pos, Color defaultColor) {
+        double dt = (editor.currentTime - mousePositions.time(prev)) * 1.0 / (mousePositions.time(pos) - mousePositions.time(prev));
+        double dx = mousePositions.x(pos) - mousePositions.x(prev);
+        double dy = mousePositions.y(pos) - mousePositions.y(prev);
+        Point currentPoint = new Point((int) map(mousePositions.x(prev) + dt * dx, sWidth, width), (int) map(mousePositions.y(prev) + dt * dy, sHeight, height));
         g.setColor(SELECTED_COLOR);
         g.fillOval(currentPoint.x - circleRadius - 1, currentPoint.y - circleRadius - 1, circleRadius * 2 + 2, circleRadius * 2 + 2);
         g.setColor(defaultColor);
     }
 
     public void mousePressed(MouseEvent e) {
-        if ((e.getModifiers() & InputEvent.SHIFT_MASK) == 0) {
-            editor.selected.clear();
-            offsetMap.clear();
+        if ((e.getModifiers() & InputEvent.SHIFT_MASK) == 0) editor.clearSelection();
+        EventStore mousePositions = recorder.mousePositions;
+        updateGrid();
+        double radius = circleRadius + 0.5;
+        boolean hit = false;
+        for (int i = 0, n = gridInside(e.getX() - radius, e.getY() - radius, e.getX() + radius, e.getY() + radius), pos; i < n; i++)
+            if (Math.hypot(map(mousePositions.x(pos = grid.result(i)), sWidth, width) - e.getX(), map(mousePositions.y(pos), sHeight, height) - e.getY()) < radius) {
+                editor.selectedPositions.set(pos);
+                hit = true;
+            }
+        if (!hit) {
+            banding = true;
+            bandStart.setLocation(e.getPoint());
+            band.setBounds(e.getX(), e.getY(), 0, 0);
         }
-        ArrayList<Recorder.MousePos> mousePositions = recorder.mousePositions;
-        mousePositions.stream()
-                .filter(pos -> Math.abs(pos.time - editor.currentTime) < editor.timeRange && Math.hypot(map(pos.x, sWidth, width) - e.getX(), map(pos.y, sHeight, height) - e.getY()) < circleRadius + 0.5)
-                .forEach(editor.selected::add);
-        editor.selected.stream().filter(obj -> obj instanceof Recorder.MousePos).forEach(pos -> offsetMap.put((Recorder.MousePos) pos, new Point(((Recorder.MousePos) pos).x - (int) map(e.getX(), width, sWidth), ((Recorder.MousePos) pos).y - (int) map(e.getY(), height, sHeight))));
-        startDragPos.setLocation(map(e.getX(), width, sWidth), map(e.getY(), height, sHeight));
+        startDragPos.setLocation((int) map(e.getX(), width, sWidth), (int) map(e.getY(), height, sHeight));
         editor.repaint();
     }
 
 
     public void mouseDragged(MouseEvent e) {
-        Point newPos = new Point((int) map(e.getX(), width, sWidth), (int) map(e.getY(), height, sHeight));
-        editor.selected.stream().filter(object -> object instanceof Recorder.MousePos).forEach(obj -> {
-            Point offset = offsetMap.get(obj);
-            ((Recorder.MousePos) obj).x = newPos.x + offset.x;
-            ((Recorder.MousePos) obj).y = newPos.y + offset.y;
-        });
+        if (banding) {
+            band.setFrameFromDiagonal(bandStart, e.getPoint());
+            repaint();
+            return;
+        }
+        int x = (int) map(e.getX(), width, sWidth), y = (int) map(e.getY(), height, sHeight);
+        int dx = x - startDragPos.x, dy = y - startDragPos.y;
+        EventStore mousePositions = recorder.mousePositions;
+        BitSet selected = editor.selectedPositions;
+        long first = Long.MAX_VALUE, last = Long.MIN_VALUE;
+        pathTiles.refresh();
+        for (int pos = selected.nextSetBit(0); pos >= 0; pos = selected.nextSetBit(pos + 1)) {
+            mousePositions.setPosition(pos, mousePositions.x(pos) + dx, mousePositions.y(pos) + dy);
+            first = Math.min(first, mousePositions.time(pos));
+            last = Math.max(last, mousePositions.time(pos));
+        }
+        if (first <= last) { // the segment after the last moved sample is drawn with the sample after it
+            TimeIndex index = recorder.positionIndex;
+            int next = index.upperBound(last);
+            pathTiles.edited(first, next < index.size() ? index.time(next) : last);
+        }
+        startDragPos.setLocation(x, y);
         repaint();
     }
 
@@ -119,6 +237,24 @@ public class MouseDisplay extends JComponent implements MouseListener, MouseMoti
     }
 
     public void mouseReleased(MouseEvent e) {
+        if (!banding) return;
+        banding = false;
+        updateGrid();
+        for (int i = 0, n = gridInside(band.x, band.y, band.x + band.width, band.y + band.height); i < n; i++)
+            editor.selectedPositions.set(grid.result(i));
+        editor.repaint();
+    }
+
+    private void updateGrid() {
+        TimeIndex index = recorder.positionIndex;
+        grid.update(index.upperBound(editor.currentTime - editor.timeRange), index.lowerBound(editor.currentTime + editor.timeRange));
+    }
+
+    /**
+     * Queries the grid with a rectangle in component coordinates.
+     */
+    private int gridInside(double x0, double y0, double x1, double y1) {
+        return grid.inside((int) Math.floor(map(x0, width, sWidth)), (int) Math.floor(map(y0, height, sHeight)), (int) Math.ceil(map(x1, width, sWidth)), (int) Math.ceil(map(y1, height, sHeight)));
     }
 
     public void mouseEntered(MouseEvent e) {
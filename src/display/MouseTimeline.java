@@ -1,10 +1,15 @@
 package display;
 
+import controllers.EventStore;
+import controllers.IntervalIndex;
+import controllers.PathPyramid;
 import controllers.Recorder;
+import controllers.TimeIndex;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.util.Arrays;
 
 import static display.Editor.*;
 
@@ -14,8 +19,11 @@ public class MouseTimeline extends JComponent implements MouseWheelListener, Mou
 
     private int startDragPos;
     private long startDragTime;
+    private long lastDragTime;
 
     private static final int blockHeight = 6;
+    private final Rectangle rectangle = new Rectangle();
+    private final int[] lastColumn = new int[4];
 
     public MouseTimeline(Editor editor, Recorder recorder) {
         this.editor = editor;
@@ -39,14 +47,32 @@ public class MouseTimeline extends JComponent implements MouseWheelListener, Mou
         g.drawLine(width / 2, 0, width / 2, height);
         g.drawLine(0, height - 1, width, height - 1);
 
-        recorder.mousePresses.stream().filter(press -> press.time <= editor.currentTime + editor.timeRange && editor.currentTime - editor.timeRange <= press.time + press.duration).forEach(press -> {
-            boolean selected = editor.selected.contains(press);
+        EventStore mousePresses = recorder.mousePresses;
+        IntervalIndex buttonIndex = recorder.buttonIndex;
+        Arrays.fill(lastColumn, Integer.MIN_VALUE);
+        for (int i = 0, n = buttonIndex.overlapping(editor.currentTime - editor.timeRange, editor.currentTime + editor.timeRange); i < n; i++) {
+            int press = buttonIndex.result(i);
+            boolean selected = editor.selectedButtons.get(press);
+            int row = getButtonIndex(mousePresses.code(press));
+            getRectangle(mousePresses, press, blockHeight, row, width, height, editor, rectangle);
+            if (rectangle.width == 0) { // zoomed out below a pixel per press
+                if (rectangle.x == lastColumn[row] && !selected) continue; // same pixels as the last one
+                lastColumn[row] = rectangle.x;
+            }
             if (selected) g.setColor(SELECTED_COLOR);
-            Rectangle rectangle = getRectangle(press, blockHeight, getButtonIndex(press.code), width, height, editor);
             g.drawRect(rectangle.x, rectangle.y, rectangle.width, rectangle.height);
             if (selected) g.setColor(old);
-        });
-        recorder.mousePositions.stream().filter(pos -> Math.abs(pos.time - editor.currentTime) < editor.timeRange).forEach(pos -> g.drawOval(mapToPos(pos.time, editor.currentTime, editor.timeRange, width) - 2, 20 - 2, 4, 4));
+        }
+        TimeIndex index = recorder.positionIndex;
+        int from = index.upperBound(editor.currentTime - editor.timeRange), to = index.lowerBound(editor.currentTime + editor.timeRange);
+        if (to - from <= width) for (int i = from; i < to; i++)
+            g.drawOval(mapToPos(index.time(i), editor.currentTime, editor.timeRange, width) - 2, 20 - 2, 4, 4);
+        else { // more samples than pixels: one dot per pyramid bucket of about a pixel
+            PathPyramid pyramid = recorder.positionPyramid;
+            int level = pyramid.level(editor.timePerPixel(width));
+            for (int b = pyramid.from(level, editor.currentTime - editor.timeRange), end = pyramid.to(level, editor.currentTime + editor.timeRange); b < end; b++)
+                g.drawOval(mapToPos(recorder.mousePositions.time(pyramid.rep(level, pyramid.repsFrom(level, b))), editor.currentTime, editor.timeRange, width) - 2, 20 - 2, 4, 4);
+        }
 
         g.setColor(SELECTED_COLOR);
         int leftLimit = mapToPos(0L, editor.currentTime, editor.timeRange, width);
@@ -86,24 +112,24 @@ public class MouseTimeline extends JComponent implements MouseWheelListener, Mou
         int height = getHeight();
         startDragPos = e.getX();
         startDragTime = editor.currentTime;
-        if ((e.getModifiers() & InputEvent.SHIFT_MASK) == 0) {
-            editor.selected.clear();
-            editor.offsetMap.clear();
-        }
-        recorder.mousePresses.stream()
-                .filter(press -> press.time <= editor.currentTime + editor.timeRange && editor.currentTime - editor.timeRange <= press.time + press.duration)
-                .filter(press -> getRectangle(press, blockHeight, getButtonIndex(press.code), width, height, editor).contains(e.getPoint()))
-                .forEach(editor.selected::add);
-        editor.selected.stream().filter(obj -> obj instanceof Recorder.Press).forEach(press -> editor.offsetMap.put((Recorder.Press) press, e.getX() - mapToPos(press.time, editor.currentTime, editor.timeRange, width)));
+        lastDragTime = mapToTime(e.getX(), width, editor.currentTime, editor.timeRange);
+        if ((e.getModifiers() & InputEvent.SHIFT_MASK) == 0) editor.clearSelection();
+        EventStore mousePresses = recorder.mousePresses;
+        IntervalIndex buttonIndex = recorder.buttonIndex;
+        long slack = editor.timePerPixel(width);
+        for (int i = 0, n = buttonIndex.overlapping(lastDragTime - slack, lastDragTime + slack), press; i < n; i++)
+            if (getRectangle(mousePresses, press = buttonIndex.result(i), blockHeight, getButtonIndex(mousePresses.code(press)), width, height, editor, rectangle).contains(e.getPoint()))
+                editor.selectedButtons.set(press);
         editor.repaint();
     }
 
     public void mouseDragged(MouseEvent e) {
         int width = getWidth();
-        if (editor.selected.size() > 0)
-            editor.selected.stream().filter(obj -> obj instanceof Recorder.Press)
-                    .forEach(obj -> obj.time = mapToTime(e.getX() - editor.offsetMap.get(obj), width, editor.currentTime, editor.timeRange));
-        else editor.currentTime = startDragTime - (int) map(e.getX() - startDragPos, width / 2d, editor.timeRange);
+        if (editor.hasSelection()) {
+            long time = mapToTime(e.getX(), width, editor.currentTime, editor.timeRange);
+            editor.moveSelectedPresses(time - lastDragTime);
+            lastDragTime = time;
+        } else editor.currentTime = startDragTime - (int) map(e.getX() - startDragPos, width / 2d, editor.timeRange);
         editor.repaint();
     }
 
@@ -0,0 +1,136 @@
+package display;
+
+import controllers.EventStore;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * Offscreen images of the mouse path, one per chunk of time, so a repaint only draws the chunks that scrolled into
+ * the window and the two partial chunks at its edges.
+ * <p>
+ * Each tile only covers the bounding box of its chunk of the path, so compositing costs about as much as the area
+ * the path actually covers. A tile is dropped when its chunk leaves the window or when samples in it are edited;
+ * appending samples only drops the tiles from the first new sample on. A different size, color, level of detail or
+ * chunk length drops them all.
+ */
+public class PathTiles {
+    public interface Painter {
+        /**
+         * Draws the path of the samples timed in {@code [from, to)}, each with its segment from the sample before.
+         *
+         * @return number of primitives drawn
+         */
+        int paint(Graphics g, int level, long from, long to);
+
+        /**
+         * Sets {@code bounds} to the pixels {@link #paint} would touch, or to an empty rectangle if none.
+         */
+        void bounds(int level, long from, long to, Rectangle bounds);
+    }
+
+    private static class Tile {
+        final BufferedImage image;
+        final int x, y;
+
+        Tile(BufferedImage image, int x, int y) {
+            this.image = image;
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    private static final int CHUNKS = 8;
+    private static final Tile EMPTY = new Tile(null, 0, 0);
+
+    private final EventStore store;
+    private final Painter painter;
+    private final HashMap<Long, Tile> tiles = new HashMap<>();
+    private final Rectangle bounds = new Rectangle();
+    private int width, height, level;
+    private long chunk;
+    private Color color;
+    private int modCount, timeVersion, size;
+
+    public PathTiles(EventStore store, Painter painter) {
+        this.store = store;
+        this.painter = painter;
+        sync();
+    }
+
+    /**
+     * Draws the path of the samples timed in {@code [from, to)}.
+     *
+     * @return number of primitives drawn, not counting cached tiles
+     */
+    public int paint(Graphics g, GraphicsConfiguration configuration, int level, long from, long to, int width, int height) {
+        long chunk = Long.highestOneBit(Math.max((to - from) / CHUNKS, 16));
+        if (width != this.width || height != this.height || level != this.level || chunk != this.chunk || !g.getColor().equals(color)) {
+            tiles.clear();
+            this.width = width;
+            this.height = height;
+            this.level = level;
+            this.chunk = chunk;
+            color = g.getColor();
+        }
+        refresh();
+        long first = Math.floorDiv(from + chunk - 1, chunk), last = Math.floorDiv(to, chunk);
+        if (first >= last || configuration == null) return painter.paint(g, level, from, to);
+        for (Iterator<Long> keys = tiles.keySet().iterator(); keys.hasNext(); ) {
+            long key = keys.next();
+            if (key < first || key >= last) keys.remove();
+        }
+        int primitives = painter.paint(g, level, from, first * chunk);
+        for (long key = first; key < last; key++) {
+            Tile tile = tiles.get(key);
+            if (tile == null) {
+                painter.bounds(level, key * chunk, (key + 1) * chunk, bounds);
+                if (bounds.isEmpty()) tile = EMPTY;
+                else {
+                    tile = new Tile(configuration.createCompatibleImage(bounds.width, bounds.height, Transparency.TRANSLUCENT), bounds.x, bounds.y);
+                    Graphics2D tileGraphics = tile.image.createGraphics();
+                    tileGraphics.translate(-bounds.x, -bounds.y);
+                    tileGraphics.setColor(color);
+                    primitives += painter.paint(tileGraphics, level, key * chunk, (key + 1) * chunk);
+                    tileGraphics.dispose();
+                }
+                tiles.put(key, tile);
+            }
+            if (tile.image != null) g.drawImage(tile.image, tile.x, tile.y, null);
+        }
+        return primitives + painter.paint(g, level, last * chunk, to);
+    }
+
+    /**
+     * Catches up with changes to the store: appends drop the tiles from the first new sample on, anything else
+     * drops every tile. Call before editing samples and report the edit with {@link #edited(long, long)}.
+     */
+    public void refresh() {
+        if (store.modCount() == modCount) return;
+        if (store.timeVersion() == timeVersion && store.modCount() - modCount == store.size() - size && size < store.size())
+            invalidate(store.time(size), Long.MAX_VALUE); // appended in time order
+        else tiles.clear();
+        sync();
+    }
+
+    /**
+     * Drops the tiles with samples timed in {@code [from, to]} and takes every change to the store since
+     * {@link #refresh()} as handled.
+     */
+    public void edited(long from, long to) {
+        invalidate(from, to);
+        sync();
+    }
+
+    private void invalidate(long from, long to) {
+        tiles.keySet().removeIf(key -> key * chunk <= to && from < (key + 1) * chunk);
+    }
+
+    private void sync() {
+        modCount = store.modCount();
+        timeVersion = store.timeVersion();
+        size = store.size();
+    }
+}
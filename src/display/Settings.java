@@ -1,9 +1,10 @@
 package display;
 
 import com.google.gson.Gson;
+import controllers.CapturePipeline;
+import controllers.PlaybackOptions;
 import controllers.Recorder;
 import main.Main;
-import org.jnativehook.keyboard.NativeKeyEvent;
 
 import javax.swing.*;
 import java.awt.*;
@@ -16,6 +17,52 @@ public class Settings {
     public static final Hotkey RECORD_KEY = new Hotkey("record_key", KeyEvent.VK_R, KeyEvent.SHIFT_DOWN_MASK);
     public static final Hotkey PLAY_KEY = new Hotkey("play_key", KeyEvent.VK_P, KeyEvent.SHIFT_DOWN_MASK);
     public static final Hotkey STOP_KEY = new Hotkey("stop_key", KeyEvent.VK_ESCAPE, 0);
+    /**
+     * How far, in pixels and milliseconds, the played back mouse path may stray from the recorded one.
+     */
+    public static final double PATH_TOLERANCE = preferences.getDouble("path_tolerance", 1.5);
+    public static final long PATH_TIME_TOLERANCE = preferences.getLong("path_time_tolerance", 0);
+
+    public static final int PLAY = 1, RECORD = 2, STOP = 4;
+
+    /**
+     * Speed, idle gap cutting, press durations, looping and overdue moves for playback from the editor.
+     */
+    public static PlaybackOptions playbackOptions() {
+        PlaybackOptions options = new PlaybackOptions();
+        options.speed = preferences.getDouble("playback_speed", options.speed);
+        options.idleThreshold = preferences.getLong("idle_threshold", options.idleThreshold);
+        options.collapsedGap = preferences.getLong("collapsed_gap", options.collapsedGap);
+        options.scaleDurations = preferences.getBoolean("scale_durations", options.scaleDurations);
+        options.iterations = preferences.getInt("loop_iterations", options.iterations);
+        options.iterationGap = preferences.getLong("loop_gap", options.iterationGap);
+        try {
+            options.moveCatchUp = PlaybackOptions.MoveCatchUp.valueOf(preferences.get("move_catch_up", options.moveCatchUp.name()));
+        } catch (IllegalArgumentException e) { // stale or hand-edited, keep the default
+            options.moveCatchUp = PlaybackOptions.MoveCatchUp.LATEST;
+        }
+        return options;
+    }
+
+    /**
+     * What the screen capture drops when one of its stages falls behind.
+     */
+    public static CapturePipeline.Backpressure captureBackpressure() {
+        try {
+            return CapturePipeline.Backpressure.valueOf(preferences.get("capture_backpressure", CapturePipeline.Backpressure.DROP_OLDEST.name()));
+        } catch (IllegalArgumentException e) { // stale or hand-edited, keep the default
+            return CapturePipeline.Backpressure.DROP_OLDEST;
+        }
+    }
+
+    /**
+     * @param keycode   translated with {@link Recorder#translateKey(int)}
+     * @param modifiers translated with {@link Recorder#translateModifier(int)}
+     * @return which hotkeys the key triggers, as a mask of {@link #PLAY}, {@link #RECORD} and {@link #STOP}
+     */
+    public static int hotkeys(int keycode, int modifiers) {
+        return (PLAY_KEY.matches(keycode, modifiers) ? PLAY : 0) | (RECORD_KEY.matches(keycode, modifiers) ? RECORD : 0) | (STOP_KEY.matches(keycode, modifiers) ? STOP : 0);
+    }
 
     public static void save() {
         preferences.put("record_key", gson.toJson(RECORD_KEY));
@@ -34,8 +81,8 @@ public class Settings {
             this.modifiers = preferences.getInt(key + "_modifiers", modifiers);
         }
 
-        public boolean accepts(NativeKeyEvent event) {
-            return Recorder.translateKey(event.getKeyCode()) == keycode && (modifiers == 0 || Recorder.translateModifier(event.getModifiers()) == modifiers);
+        public boolean matches(int keycode, int modifiers) {
+            return keycode == this.keycode && (this.modifiers == 0 || modifiers == this.modifiers);
         }
 
         public void change(int keycode, int modifiers) {
@@ -9,7 +9,7 @@ import java.net.URISyntaxException;
 import java.util.ArrayList;
 
 public abstract class Strings {
-    public String LANG, MOUSE, KEYS, FILE, SAVE, OPEN, HOTKEY, RECORD, STOP, PLAY, CHANGE_HOTKEY_HINT, SET_TIME_TO, ABOUT, ABOUT_TITLE, CHANGE_LANG_WARN, WARNING;
+    public String LANG, MOUSE, KEYS, FILE, SAVE, OPEN, LOADING, LATENCY_REPORT, RECORDING_STATS, HOTKEY, RECORD, STOP, PLAY, CHANGE_HOTKEY_HINT, SET_TIME_TO, ABOUT, ABOUT_TITLE, CHANGE_LANG_WARN, WARNING;
     public static final Strings ZH = new Strings() {{
         LANG = "語言";
         MOUSE = "鼠標";
@@ -17,6 +17,9 @@ public abstract class Strings {
         FILE = "文件";
         SAVE = "保存...";
         OPEN = "打開...";
+        LOADING = "載入中";
+        LATENCY_REPORT = "保存延遲報告...";
+        RECORDING_STATS = "錄製統計";
         HOTKEY = "快捷鍵";
         RECORD = "錄製";
         STOP = "停止";
@@ -35,6 +38,9 @@ public abstract class Strings {
         FILE = "File";
         SAVE = "Save...";
         OPEN = "Open...";
+        LOADING = "Loading";
+        LATENCY_REPORT = "Save latency report...";
+        RECORDING_STATS = "Recording statistics";
         HOTKEY = "Hotkey";
         RECORD = "Record";
         STOP = "Stop";
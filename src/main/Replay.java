@@ -0,0 +1,137 @@
+package main;
+
+import controllers.*;
+
+import java.awt.*;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Plays a recording from the command line without the editor: no window, look-and-feel or native hook, just the
+ * file, a {@link Robot} and the {@link Player}.
+ * <p>
+ * {@code java main.Replay <file> [times] [--gap ms] [--speed x] [--idle ms] [--idle-gap ms] [--scale-durations] [--catch-up all|latest|interpolate] [--latency] [--strict] [--dry]}
+ * <p>
+ * The recording is compiled once and played {@code times} times in a row by the player's loop, 0 to loop until
+ * killed, with {@code --gap} milliseconds between runs. {@code --strict} refuses recordings with events out of
+ * time order or overlapping instead of repairing them. {@code --dry} plays into a {@link MemorySink} instead of the
+ * desktop, so it runs without a display and reports what would have been injected.
+ * <p>
+ * {@code --speed} plays faster, {@code --idle} cuts every pause longer than the given milliseconds down to
+ * {@code --idle-gap} (500 ms by default), and {@code --scale-durations} shortens presses along with everything else.
+ * {@code --catch-up} picks what happens to mouse samples that are overdue together, the latest only by default.
+ */
+public class Replay {
+    private static final String USAGE = "Usage: java main.Replay <file> [times] [--gap ms] [--speed x] [--idle ms] [--idle-gap ms] [--scale-durations] [--catch-up all|latest|interpolate] [--latency] [--strict] [--dry]";
+
+    public static void main(String... args) throws AWTException, IOException, InterruptedException {
+        File file = null;
+        int times = 1;
+        long gap = 0;
+        boolean latency = false, dry = false;
+        Timeline.Validation validation = Timeline.Validation.REPAIR;
+        PlaybackOptions options = new PlaybackOptions();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--gap") && i + 1 < args.length) gap = Long.parseLong(args[++i]);
+            else if (args[i].equals("--speed") && i + 1 < args.length) options.speed = Double.parseDouble(args[++i]);
+            else if (args[i].equals("--idle") && i + 1 < args.length) options.idleThreshold = Long.parseLong(args[++i]);
+            else if (args[i].equals("--idle-gap") && i + 1 < args.length) options.collapsedGap = Long.parseLong(args[++i]);
+            else if (args[i].equals("--scale-durations")) options.scaleDurations = true;
+            else if (args[i].equals("--catch-up") && i + 1 < args.length) options.moveCatchUp = moveCatchUp(args[++i]);
+            else if (args[i].equals("--latency")) latency = true;
+            else if (args[i].equals("--strict")) validation = Timeline.Validation.REJECT;
+            else if (args[i].equals("--dry")) dry = true;
+            else if (file == null) file = new File(args[i]);
+            else times = Integer.parseInt(args[i]);
+        }
+        if (file == null || times < 0) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        try {
+            options.validate();
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+        }
+
+        long loadStart = System.nanoTime();
+        EventStore mousePositions = new EventStore(EventStore.Kind.MOVE);
+        EventStore mousePresses = new EventStore(EventStore.Kind.PRESS);
+        EventStore keyPresses = new EventStore(EventStore.Kind.PRESS);
+        RecordingIO.load(file, mousePositions, mousePresses, keyPresses);
+        Timeline timeline;
+        try {
+            timeline = Timeline.compile(mousePositions, mousePresses, keyPresses, validation);
+        } catch (IllegalArgumentException e) {
+            System.err.println(file.getName() + ": " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        System.out.printf("Loaded %s in %.1f ms: %d moves, %d buttons, %d keys, %d ms long, %d repairs%n", file.getName(),
+                (System.nanoTime() - loadStart) / 1e6, mousePositions.size(), mousePresses.size(), keyPresses.size(), timeline.length(), timeline.repairs);
+
+        options.iterations = times;
+        options.iterationGap = gap;
+        Report report = new Report(dry ? new MemorySink() : null, latency);
+        Player player = report.player = new Player(dry ? report.memory : new RobotSink(new Robot()), report);
+        player.play(timeline, options);
+        System.out.printf("Playing at %s: %.1f ms each%n", options, player.length() / 1e6);
+        report.finished.acquire();
+        System.out.printf("%d runs: mean %.1f ms, min %.1f ms, max %.1f ms, drift mean %+.1f ms, max %+.1f ms%n", player.iterations(),
+                report.total / player.iterations(), report.min, report.max, player.meanDrift() / 1e6, player.maxDrift() / 1e6);
+        System.exit(0);
+    }
+
+    /**
+     * Prints every iteration as it ends, on the playback thread, before the next one resets the latencies.
+     */
+    private static PlaybackOptions.MoveCatchUp moveCatchUp(String name) {
+        for (PlaybackOptions.MoveCatchUp policy : PlaybackOptions.MoveCatchUp.values())
+            if (policy.name().equalsIgnoreCase(name)) return policy;
+        System.err.println("Unknown --catch-up " + name + ", expected all, latest or interpolate");
+        System.err.println(USAGE);
+        System.exit(2);
+        return null;
+    }
+
+    private static class Report implements Player.Listener {
+        final Semaphore finished = new Semaphore(0);
+        final PrintWriter out = new PrintWriter(System.out);
+        final MemorySink memory;
+        final boolean latency;
+        Player player;
+        double total, min = Double.MAX_VALUE, max;
+
+        Report(MemorySink memory, boolean latency) {
+            this.memory = memory;
+            this.latency = latency;
+        }
+
+        public void progress(long time) {
+        }
+
+        public void iterationFinished(int iteration, long duration, long drift) {
+            double millis = duration / 1e6;
+            total += millis;
+            min = Math.min(min, millis);
+            max = Math.max(max, millis);
+            System.out.printf("Run %d: %.1f ms (%+.1f ms), move p99 %.3f ms, key p99 %.3f ms, button p99 %.3f ms, %d moves coalesced%n", iteration, millis,
+                    drift / 1e6, player.moveLatency.percentile(99) / 1e6, player.keyLatency.percentile(99) / 1e6, player.buttonLatency.percentile(99) / 1e6,
+                    player.coalescedMoves());
+            if (memory != null) {
+                System.out.printf("  injected %d moves, %d key presses, %d key releases, %d button presses, %d button releases%n",
+                        memory.count(InputSink.MOVE), memory.count(InputSink.KEY_PRESS), memory.count(InputSink.KEY_RELEASE),
+                        memory.count(InputSink.BUTTON_PRESS), memory.count(InputSink.BUTTON_RELEASE));
+                memory.clear();
+            }
+            if (latency) player.printLatency(out);
+        }
+
+        public void finished() {
+            finished.release();
+        }
+    }
+}